@@ -0,0 +1,41 @@
+package com.realdecoy;
+
+/**
+ * The fields a {@link JsonFieldExtractor} pulled out of one content item,
+ * each at the index of its path in the list the extractor was given. An item
+ * left unchanged since the previous export has no fields, only the manifest
+ * entry of its record block.
+ */
+public class ContentItem {
+
+	private ManifestEntry manifestEntry;
+	private final Object[] values;
+
+	ContentItem(Object[] values) {
+		this.values = values;
+	}
+
+	ContentItem(ManifestEntry manifestEntry) {
+		this.manifestEntry = manifestEntry;
+		this.values = null;
+	}
+
+	public ManifestEntry getManifestEntry() {
+		return manifestEntry;
+	}
+
+	public void setManifestEntry(ManifestEntry manifestEntry) {
+		this.manifestEntry = manifestEntry;
+	}
+
+	// True when the record block in the previous output can be copied across as it is.
+	public boolean isUnchanged() {
+		return values == null;
+	}
+
+	// The value at an index of the extractor's field paths, null when the item did not have it.
+	Object getValue(int valueIndex) {
+		return values[valueIndex];
+	}
+
+}
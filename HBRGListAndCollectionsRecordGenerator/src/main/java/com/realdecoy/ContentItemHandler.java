@@ -0,0 +1,11 @@
+package com.realdecoy;
+
+import java.io.File;
+import java.io.IOException;
+
+public interface ContentItemHandler {
+
+	// Called once per parsed content item, in the order the item folders were listed.
+	void handle(File contentItemFolder, ContentItem contentItem) throws IOException;
+
+}
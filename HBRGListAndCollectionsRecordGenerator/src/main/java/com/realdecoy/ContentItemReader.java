@@ -0,0 +1,188 @@
+package com.realdecoy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONException;
+
+/**
+ * Reads the content file of an item folder and extracts its fields, unless
+ * the previous export's manifest shows the item has not changed since. An
+ * item whose content file has the same size and modification time is taken
+ * as unchanged without being read, one that has been touched is read and
+ * hashed, and only parsed when the hash differs. Safe to share between the
+ * worker threads.
+ *
+ * A content file is read with a single read into a buffer kept for the
+ * thread, or mapped when it is larger than the buffer should grow to. The
+ * bytes are hashed in place and decoded as UTF-8 into a character buffer,
+ * also kept for the thread unless the file was mapped, which the extractor
+ * parses directly. Neither buffer grows past the mapping threshold.
+ */
+public class ContentItemReader {
+
+	private static final String CONTENT_FILE_NAME = "_.json";
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	private static final Logger LOGGER = Logger.getLogger(ContentItemReader.class.getName());
+	// Content files larger than this are mapped rather than read into the thread's buffer.
+	private static final int MAP_THRESHOLD = 1024 * 1024;
+	private static final ThreadLocal<ReadBuffers> READ_BUFFERS = new ThreadLocal<ReadBuffers>() {
+		@Override
+		protected ReadBuffers initialValue() {
+			return new ReadBuffers();
+		}
+	};
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final JsonFieldExtractor fieldExtractor;
+	private final ExportManifest previousManifest;
+
+	// The previous manifest is null when every item is to be parsed.
+	public ContentItemReader(JsonFieldExtractor fieldExtractor, ExportManifest previousManifest) {
+		this.fieldExtractor = fieldExtractor;
+		this.previousManifest = previousManifest;
+	}
+
+	// Returns null when the folder is not a content item folder or its content could not be parsed.
+	public ContentItem read(File contentItemFolder) {
+		if (!contentItemFolder.isDirectory()) {
+			return null;
+		}
+
+		File content = new File(contentItemFolder.getAbsolutePath() + File.separator + CONTENT_FILE_NAME);
+		String itemKey = contentItemFolder.getParentFile().getName() + "/" + contentItemFolder.getName();
+
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(content.toPath(), BasicFileAttributes.class);
+			ManifestEntry entry = new ManifestEntry(itemKey);
+			entry.setContentLength(attributes.size());
+			entry.setLastModified(attributes.lastModifiedTime().toMillis());
+
+			ManifestEntry previousEntry = previousManifest == null ? null : previousManifest.get(itemKey);
+			if (previousEntry != null && previousEntry.getContentLength() == entry.getContentLength()
+					&& previousEntry.getLastModified() == entry.getLastModified()) {
+				entry.setContentHash(previousEntry.getContentHash());
+				return unchanged(entry, previousEntry);
+			}
+
+			ReadBuffers buffers = READ_BUFFERS.get();
+			ByteBuffer contentBytes = buffers.read(content.toPath(), attributes.size());
+			entry.setContentHash(buffers.hash(contentBytes));
+			if (previousEntry != null && Arrays.equals(previousEntry.getContentHash(), entry.getContentHash())) {
+				// Touched but not changed, the previous block still stands.
+				return unchanged(entry, previousEntry);
+			}
+
+			LOGGER.info("Parsing content item: " + contentItemFolder.getName() + ".");
+			ContentItem contentItem = fieldExtractor.extract(buffers.decode(contentBytes));
+			contentItem.setManifestEntry(entry);
+			return contentItem;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Error encountered while reading file: " + content.getName() + ".", e);
+		} catch (JSONException e) {
+			LOGGER.log(Level.SEVERE, "Error encountered while reading file: " + content.getName() + ".", e);
+		}
+		return null;
+	}
+
+	private static ContentItem unchanged(ManifestEntry entry, ManifestEntry previousEntry) {
+		entry.setBlockOffset(previousEntry.getBlockOffset());
+		entry.setBlockLength(previousEntry.getBlockLength());
+		return new ContentItem(entry);
+	}
+
+	// The buffers, decoder and digest of one thread, reused for every content file it reads.
+	private static class ReadBuffers {
+
+		private ByteBuffer byteBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		private CharBuffer charBuffer = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+		private final CharsetDecoder decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private final MessageDigest digest;
+
+		private ReadBuffers() {
+			try {
+				digest = MessageDigest.getInstance(HASH_ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(HASH_ALGORITHM + " is not available.", e);
+			}
+		}
+
+		// The bytes of the file, valid until the next read on this thread. Reads no further than the size the file
+		// had when its attributes were read, a file that has grown since is taken as changed on the next run.
+		private ByteBuffer read(Path path, long size) throws IOException {
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Content file is too large: " + size + " bytes.");
+			}
+
+			FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				if (size > MAP_THRESHOLD) {
+					return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				}
+				if (byteBuffer.capacity() < size) {
+					byteBuffer = ByteBuffer.allocate((int) size);
+				}
+				byteBuffer.clear().limit((int) size);
+				while (byteBuffer.hasRemaining()) {
+					if (channel.read(byteBuffer) < 0) {
+						break;
+					}
+				}
+				byteBuffer.flip();
+				return byteBuffer;
+			} finally {
+				channel.close();
+			}
+		}
+
+		// Leaves the bytes where they were, ready to be decoded.
+		private byte[] hash(ByteBuffer bytes) {
+			bytes.mark();
+			digest.update(bytes);
+			bytes.reset();
+			return digest.digest();
+		}
+
+		// The characters of the bytes, valid until the next decode on this thread. A byte order mark is skipped. The
+		// characters of a mapped file get a buffer of their own, so the one kept for the thread stays within the threshold.
+		private CharBuffer decode(ByteBuffer bytes) {
+			int capacity = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+			CharBuffer chars;
+			if (capacity > MAP_THRESHOLD) {
+				chars = CharBuffer.allocate(capacity);
+			} else {
+				if (charBuffer.capacity() < capacity) {
+					charBuffer = CharBuffer.allocate(capacity);
+				}
+				chars = charBuffer;
+			}
+			chars.clear();
+			decoder.reset();
+			decoder.decode(bytes, chars, true);
+			decoder.flush(chars);
+			chars.flip();
+			if (chars.hasRemaining() && chars.get(0) == '\uFEFF') {
+				chars.position(1);
+			}
+			return chars;
+		}
+
+	}
+
+}
@@ -1,34 +1,27 @@
 package com.realdecoy;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 public class Driver {
 
 	private static final String CASE_COLLECTION_FOLDER = "CaseCollections";
-	private static final String COLUMN_DELIMITER = "||";
-	private static final String CONTENT_FILE_NAME = "_.json";
+	// Set to false to parse every content item again, ignoring the previous export's manifest.
+	private static final String INCREMENTAL_PROPERTY = "generator.incremental";
 	private static final Logger LOGGER = Logger.getLogger(Driver.class.getName());
+	private static final String PARALLELISM_PROPERTY = "generator.parallelism";
 	private static final String READING_LIST_FOLDER = "ReadingList";
-	private static final String RECORD_DELIMITER = "REC";
+	// A record schema file to use in place of the bundled one.
+	private static final String SCHEMA_PROPERTY = "generator.schema";
 
 	public static void main(String[] args) {
 		LOGGER.info("Initiating process.");
 
-		ArrayList<JSONObject> contentItems = new ArrayList<>();
+		ArrayList<File> contentItemFolders = new ArrayList<>();
 		File contentSource = null, destination = null;
 		String contentSourcePath = "", destinationPath = "", filename = "";
 
@@ -85,12 +78,27 @@ public class Driver {
 				filename = args[5];
 			}
 
-			processContentDirectory(contentItems, new File(contentSource.getAbsolutePath() + File.separator + CASE_COLLECTION_FOLDER));
-			processContentDirectory(contentItems, new File(contentSource.getAbsolutePath() + File.separator + READING_LIST_FOLDER));
+			processContentDirectory(contentItemFolders, new File(contentSource.getAbsolutePath() + File.separator + CASE_COLLECTION_FOLDER));
+			processContentDirectory(contentItemFolders, new File(contentSource.getAbsolutePath() + File.separator + READING_LIST_FOLDER));
+
+			File outputFile = new File(destination.getAbsolutePath() + File.separator + filename);
+			File manifestFile = new File(outputFile.getAbsolutePath() + ExportManifest.MANIFEST_FILE_SUFFIX);
+			RecordSchema schema = loadRecordSchema();
+			ExportManifest previousManifest = null;
+			if (!"false".equals(System.getProperty(INCREMENTAL_PROPERTY))) {
+				previousManifest = ExportManifest.load(manifestFile, outputFile, schema.getFingerprint());
+			}
 
-			if (contentItems.size() > 0) {
-				processAndWriteJsonData(contentItems, destination, filename);
+			ContentItemReader reader = new ContentItemReader(new JsonFieldExtractor(schema.getFieldPaths()), previousManifest);
+			RecordWriter recordWriter = new RecordWriter(outputFile, manifestFile, schema);
+			try {
+				parseContentItems(contentItemFolders, reader, recordWriter);
+				recordWriter.finish();
+			} finally {
+				recordWriter.close();
 			}
+			LOGGER.info("Wrote " + recordWriter.getRecordCount() + " records, " + recordWriter.getCopiedCount() + " of them unchanged since the last export, "
+					+ recordWriter.getFailedCount() + " content items could not be encoded.");
 
 			LOGGER.info("Process complete.");
 		} catch (Exception e) {
@@ -99,100 +107,43 @@ public class Driver {
 
 	}
 
-	private static void parseContentItem(ArrayList<JSONObject> contentItems, File contentItemFolder) {
-		LOGGER.info("Parsing content item: " + contentItemFolder.getName() + ".");
-
-		File content = new File(contentItemFolder.getAbsolutePath() + File.separator + CONTENT_FILE_NAME);
-		JSONObject jsonObject = new JSONObject();
-		StringBuilder jsonString = new StringBuilder();
-
-		try {
-			FileInputStream fileInputStream = new FileInputStream(content);
-			BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(fileInputStream));
-			String line;
-
-			while ((line = bufferedReader.readLine()) != null) {
-				jsonString.append(line.trim());
-			}
-
-			bufferedReader.close();
-			jsonObject = new JSONObject(jsonString.toString());
-			contentItems.add(jsonObject);
-		} catch (IOException e) {
-			LOGGER.log(Level.SEVERE, "Error encountered while reading file: " + content.getName() + ".", e);
-		} catch (JSONException e) {
-			LOGGER.log(Level.SEVERE, "Error encountered while reading file: " + content.getName() + ".", e);
+	private static RecordSchema loadRecordSchema() throws IOException {
+		String schemaPath = System.getProperty(SCHEMA_PROPERTY);
+		if (schemaPath == null) {
+			return RecordSchema.loadDefault();
 		}
+		LOGGER.info("Using record schema: " + schemaPath + ".");
+		return RecordSchema.load(new File(schemaPath));
 	}
 
-	private static void processAndWriteJsonData(ArrayList<JSONObject> contentItems, File destinationFolder, String filename) {
-		LOGGER.info("Writing data to file.");
+	// Parses the folders one after another, or on a pool of worker threads when the parallelism property is above 1.
+	// Either way the handler is given the items in folder order.
+	private static void parseContentItems(List<File> contentItemFolders, ContentItemReader reader, ContentItemHandler handler) throws IOException {
+		int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 1);
 
-		try {
-			FileOutputStream fileOutputStream = new FileOutputStream(new File(destinationFolder.getAbsolutePath() + File.separator + filename));
-			OutputStreamWriter outputStreamWriter = new OutputStreamWriter(fileOutputStream, "UTF-8");
-			BufferedWriter bufferedWriter = new BufferedWriter(outputStreamWriter);
-
-			for (JSONObject contentItem : contentItems) {
-				String contentCreatedDate = contentItem.getString("ecr:createDate");
-				JSONObject content = contentItem.getJSONObject("contentItem");
-
-				String contentType = content.getString("@name");
-				String id = contentType.replace(" ", "").concat("_").concat(contentCreatedDate);
-				String absractDescription = content.getString("dek");
-				String title = content.getString("title");
-				String curationDate = content.getString("curationDate");
-				String image = content.getString("image");
-				String catgeory = content.getString("category");
-				JSONArray featuredRecords = content.getJSONObject("recordSelection").getJSONObject("filterState").getJSONArray("featuredRecords");
-
-				bufferedWriter.write("id" + COLUMN_DELIMITER + id + System.lineSeparator());
-				bufferedWriter.write("product_core_id" + COLUMN_DELIMITER + id + System.lineSeparator());
-				bufferedWriter.write("product_availability_id" + COLUMN_DELIMITER + id + System.lineSeparator());
-				bufferedWriter.write("title" + COLUMN_DELIMITER + title + System.lineSeparator());
-				bufferedWriter.write("category" + COLUMN_DELIMITER + catgeory + System.lineSeparator());
-				bufferedWriter.write("curation_date" + COLUMN_DELIMITER + curationDate + System.lineSeparator());
-				bufferedWriter.write("abstract" + COLUMN_DELIMITER + absractDescription + System.lineSeparator());
-				bufferedWriter.write("image" + COLUMN_DELIMITER + image + System.lineSeparator());
-				bufferedWriter.write("content_type" + COLUMN_DELIMITER + contentType + System.lineSeparator());
-				bufferedWriter.write("asset_source" + COLUMN_DELIMITER + "XM" + System.lineSeparator());
-				bufferedWriter.write("business_unit_eligibility" + COLUMN_DELIMITER + "hbr" + System.lineSeparator());
-				bufferedWriter.write("record_count" + COLUMN_DELIMITER + featuredRecords.length() + System.lineSeparator());
-
-				for (int i = 0; i < featuredRecords.length(); i++) {
-					String recordId = featuredRecords.getString(i);
-					String featuredRecord = String.format("%02d|%s", i+1, recordId);
-					bufferedWriter.write("featured_records" + COLUMN_DELIMITER + featuredRecord + System.lineSeparator());
-				}
-
-				bufferedWriter.write(RECORD_DELIMITER + System.lineSeparator());
+		if (parallelism > 1) {
+			LOGGER.info("Parsing content items on " + parallelism + " threads.");
+			new ParallelContentParser(parallelism, reader).parse(contentItemFolders, handler);
+			return;
+		}
 
+		for (File contentItemFolder : contentItemFolders) {
+			ContentItem contentItem = reader.read(contentItemFolder);
+			if (contentItem != null) {
+				handler.handle(contentItemFolder, contentItem);
 			}
-
-			bufferedWriter.close();
-			outputStreamWriter.close();
-			fileOutputStream.close();
-
-		} catch (IOException e) {
-			LOGGER.log(Level.SEVERE, "An unexpected error occurred.", e);
-		} catch (Exception e) {
-			LOGGER.log(Level.SEVERE, "An unexpected error occurred.", e);
 		}
-
 	}
 
-	private static void processContentDirectory(ArrayList<JSONObject> contentItems, File contentFolder) {
+	// Lists the entries of the content folder, they are checked for being item folders when they are parsed.
+	private static void processContentDirectory(ArrayList<File> contentItemFolders, File contentFolder) {
 		LOGGER.info("Processing content folder: " + contentFolder.getName() + ".");
 		String[] contentItemNames = contentFolder.list();
 
 		if (contentItemNames.length > 0) {
 
 			for (String contentItemName : contentItemNames) {
-				File contentItemFolder = new File(contentFolder.getAbsolutePath() + File.separator + contentItemName);
-
-				if (contentItemFolder.isDirectory()) {
-					parseContentItem(contentItems, contentItemFolder);
-				}
+				contentItemFolders.add(new File(contentFolder.getAbsolutePath() + File.separator + contentItemName));
 			}
 		} else {
 			LOGGER.warning("Zero files found at location: " + contentFolder.getAbsolutePath());
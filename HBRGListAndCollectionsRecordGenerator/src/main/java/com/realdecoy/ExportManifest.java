@@ -0,0 +1,127 @@
+package com.realdecoy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The manifest kept next to the output file, one entry per exported content
+ * item, which lets the next run copy the record blocks of unchanged items
+ * across from the output instead of parsing them again.
+ *
+ * The manifest also records the length and modification time of the output
+ * it describes and the record format it was written in. When either no longer
+ * matches, the block ranges cannot be trusted and the manifest is ignored.
+ * Header: magic, version (ints), record format (UTF), output length, output
+ * modification time (longs) and entry count (int), big-endian.
+ */
+public class ExportManifest {
+
+	public static final String MANIFEST_FILE_SUFFIX = ".manifest";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Logger LOGGER = Logger.getLogger(ExportManifest.class.getName());
+	private static final int MAGIC = 0x48424D46;
+	private static final int VERSION = 1;
+
+	private final HashMap<String, ManifestEntry> entries = new HashMap<>();
+
+	public ManifestEntry get(String itemKey) {
+		return entries.get(itemKey);
+	}
+
+	public void add(ManifestEntry entry) {
+		entries.put(entry.getItemKey(), entry);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	// Returns null when there is no manifest or it does not describe the output file as it is now.
+	public static ExportManifest load(File manifestFile, File outputFile, String recordFormat) {
+		if (!manifestFile.isFile()) {
+			LOGGER.info("No export manifest found, every content item will be parsed.");
+			return null;
+		}
+
+		try {
+			DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile), BUFFER_SIZE));
+			try {
+				if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+					LOGGER.warning("Ignoring export manifest of an unknown version: " + manifestFile.getName() + ".");
+					return null;
+				}
+				if (!inputStream.readUTF().equals(recordFormat)) {
+					LOGGER.info("The record format has changed since the last export, every content item will be parsed.");
+					return null;
+				}
+				if (inputStream.readLong() != outputFile.length() || inputStream.readLong() != outputFile.lastModified()) {
+					LOGGER.warning("The output file has changed since the last export, every content item will be parsed.");
+					return null;
+				}
+
+				ExportManifest manifest = new ExportManifest();
+				int entryCount = inputStream.readInt();
+				for (int i = 0; i < entryCount; i++) {
+					ManifestEntry entry = new ManifestEntry(inputStream.readUTF());
+					entry.setContentLength(inputStream.readLong());
+					entry.setLastModified(inputStream.readLong());
+					byte[] contentHash = new byte[inputStream.readUnsignedByte()];
+					inputStream.readFully(contentHash);
+					entry.setContentHash(contentHash);
+					entry.setBlockOffset(inputStream.readLong());
+					entry.setBlockLength(inputStream.readLong());
+					manifest.add(entry);
+				}
+				LOGGER.info("Loaded export manifest of " + entryCount + " content items.");
+				return manifest;
+			} finally {
+				inputStream.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Ignoring unreadable export manifest: " + manifestFile.getName() + ".", e);
+			return null;
+		}
+	}
+
+	// Written to a temporary file first, so a failed write leaves no manifest half written.
+	public void write(File manifestFile, File outputFile, String recordFormat) throws IOException {
+		File temporaryFile = File.createTempFile(manifestFile.getName(), ".tmp", manifestFile.getAbsoluteFile().getParentFile());
+		try {
+			DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), BUFFER_SIZE));
+			try {
+				outputStream.writeInt(MAGIC);
+				outputStream.writeInt(VERSION);
+				outputStream.writeUTF(recordFormat);
+				outputStream.writeLong(outputFile.length());
+				outputStream.writeLong(outputFile.lastModified());
+				outputStream.writeInt(entries.size());
+				for (ManifestEntry entry : entries.values()) {
+					outputStream.writeUTF(entry.getItemKey());
+					outputStream.writeLong(entry.getContentLength());
+					outputStream.writeLong(entry.getLastModified());
+					outputStream.writeByte(entry.getContentHash().length);
+					outputStream.write(entry.getContentHash());
+					outputStream.writeLong(entry.getBlockOffset());
+					outputStream.writeLong(entry.getBlockLength());
+				}
+			} finally {
+				outputStream.close();
+			}
+			Files.move(temporaryFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			temporaryFile.delete();
+		}
+	}
+
+}
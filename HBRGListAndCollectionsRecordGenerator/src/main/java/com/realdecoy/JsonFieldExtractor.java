@@ -0,0 +1,347 @@
+package com.realdecoy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+
+/**
+ * Pulls a declared list of fields out of a JSON document in one pass without
+ * building a tree. Only objects on the way to a declared field are parsed,
+ * every other value is skipped over by scanning its characters, so the large
+ * sections of a content item that are never exported cost no allocation.
+ *
+ * A field path is the keys from the root object separated by dots, such as
+ * contentItem.title. A path ending in [] takes an array of strings, any other
+ * path a string. Skipped values are only checked for balanced brackets and
+ * terminated strings, not parsed in full.
+ */
+public class JsonFieldExtractor {
+
+	private int fieldCount = 0;
+	private final FieldNode root = new FieldNode();
+
+	public JsonFieldExtractor(List<String> fieldPaths) {
+		for (String fieldPath : fieldPaths) {
+			boolean array = fieldPath.endsWith("[]");
+			FieldNode node = root;
+			for (String key : (array ? fieldPath.substring(0, fieldPath.length() - 2) : fieldPath).split("\\.")) {
+				node = node.getOrAddChild(key);
+			}
+			if (node.valueIndex >= 0 || node.children != null) {
+				throw new IllegalArgumentException("Field path overlaps another: " + fieldPath + ".");
+			}
+			node.valueIndex = fieldCount++;
+			node.array = array;
+		}
+	}
+
+	// Throws a JSONException when the document is malformed or a declared field holds the wrong type of value.
+	public ContentItem extract(CharSequence json) {
+		Parser parser = new Parser(json, new Object[fieldCount]);
+		parser.skipWhitespace();
+		if (parser.next() != '{') {
+			throw parser.syntaxError("A JSONObject text must begin with '{'");
+		}
+		parser.parseObject(root);
+		return new ContentItem(parser.values);
+	}
+
+	private static class FieldNode {
+
+		private ArrayList<FieldNode> children;
+		private boolean array;
+		private String key;
+		private int valueIndex = -1;
+
+		private FieldNode getOrAddChild(String key) {
+			if (valueIndex >= 0) {
+				throw new IllegalArgumentException("Field path overlaps another at: " + key + ".");
+			}
+			if (children == null) {
+				children = new ArrayList<>();
+			}
+			for (FieldNode child : children) {
+				if (child.key.equals(key)) {
+					return child;
+				}
+			}
+			FieldNode child = new FieldNode();
+			child.key = key;
+			children.add(child);
+			return child;
+		}
+
+	}
+
+	private static class Parser {
+
+		private final CharSequence json;
+		private final int length;
+		private int position = 0;
+		private final Object[] values;
+
+		private Parser(CharSequence json, Object[] values) {
+			this.json = json;
+			this.length = json.length();
+			this.values = values;
+		}
+
+		// Called after the opening brace, reads up to and including the closing one.
+		private void parseObject(FieldNode node) {
+			skipWhitespace();
+			if (peek() == '}') {
+				position++;
+				return;
+			}
+
+			while (true) {
+				skipWhitespace();
+				if (next() != '"') {
+					throw syntaxError("Expected a string key");
+				}
+				FieldNode child = matchKey(node);
+				skipWhitespace();
+				if (next() != ':') {
+					throw syntaxError("Expected a ':' after a key");
+				}
+				skipWhitespace();
+
+				if (child == null) {
+					skipValue();
+				} else if (child.valueIndex >= 0) {
+					// The first occurrence of a repeated key wins.
+					Object value = child.array ? readStringArray(child) : readStringValue(child);
+					if (values[child.valueIndex] == null) {
+						values[child.valueIndex] = value;
+					}
+				} else if (peek() == '{') {
+					position++;
+					parseObject(child);
+				} else {
+					skipValue();
+				}
+
+				skipWhitespace();
+				char c = next();
+				if (c == '}') {
+					return;
+				}
+				if (c != ',') {
+					throw syntaxError("Expected a ',' or '}'");
+				}
+			}
+		}
+
+		// Called after the opening quote of a key, reads past the closing one and returns the matching child if any.
+		private FieldNode matchKey(FieldNode node) {
+			int start = position;
+			boolean escaped = false;
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					break;
+				}
+				if (c == '\\') {
+					escaped = true;
+					next();
+				}
+			}
+			if (node.children == null) {
+				return null;
+			}
+
+			if (escaped) {
+				position = start;
+				String key = readString();
+				for (FieldNode child : node.children) {
+					if (child.key.equals(key)) {
+						return child;
+					}
+				}
+				return null;
+			}
+
+			int keyLength = position - 1 - start;
+			for (FieldNode child : node.children) {
+				if (child.key.length() == keyLength && regionMatches(start, child.key)) {
+					return child;
+				}
+			}
+			return null;
+		}
+
+		private boolean regionMatches(int start, String key) {
+			for (int i = 0; i < key.length(); i++) {
+				if (json.charAt(start + i) != key.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private String readStringValue(FieldNode node) {
+			if (peek() != '"') {
+				throw new JSONException("JSONObject[\"" + node.key + "\"] not a string.");
+			}
+			position++;
+			return readString();
+		}
+
+		private List<String> readStringArray(FieldNode node) {
+			if (next() != '[') {
+				throw new JSONException("JSONObject[\"" + node.key + "\"] is not a JSONArray.");
+			}
+			ArrayList<String> strings = new ArrayList<>();
+			skipWhitespace();
+			if (peek() == ']') {
+				position++;
+				return strings;
+			}
+
+			while (true) {
+				skipWhitespace();
+				if (next() != '"') {
+					throw new JSONException("JSONArray[" + strings.size() + "] not a string.");
+				}
+				strings.add(readString());
+				skipWhitespace();
+				char c = next();
+				if (c == ']') {
+					return strings;
+				}
+				if (c != ',') {
+					throw syntaxError("Expected a ',' or ']'");
+				}
+			}
+		}
+
+		// Called after the opening quote, reads past the closing one.
+		private String readString() {
+			int start = position;
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					return json.subSequence(start, position - 1).toString();
+				}
+				if (c == '\\') {
+					position = start;
+					return readEscapedString();
+				}
+			}
+		}
+
+		private String readEscapedString() {
+			StringBuilder builder = new StringBuilder();
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					return builder.toString();
+				}
+				if (c != '\\') {
+					builder.append(c);
+					continue;
+				}
+
+				c = next();
+				switch (c) {
+				case 'b':
+					builder.append('\b');
+					break;
+				case 'f':
+					builder.append('\f');
+					break;
+				case 'n':
+					builder.append('\n');
+					break;
+				case 'r':
+					builder.append('\r');
+					break;
+				case 't':
+					builder.append('\t');
+					break;
+				case 'u':
+					if (position + 4 > length) {
+						throw syntaxError("Unterminated string");
+					}
+					try {
+						builder.append((char) Integer.parseInt(json.subSequence(position, position + 4).toString(), 16));
+					} catch (NumberFormatException e) {
+						throw syntaxError("Illegal escape");
+					}
+					position += 4;
+					break;
+				case '"':
+				case '\'':
+				case '\\':
+				case '/':
+					builder.append(c);
+					break;
+				default:
+					throw syntaxError("Illegal escape");
+				}
+			}
+		}
+
+		// Skips a value of any type, nested objects and arrays included, without keeping any of it.
+		private void skipValue() {
+			int depth = 0;
+			do {
+				char c = next();
+				if (c == '"') {
+					skipString();
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+					if (depth < 0) {
+						throw syntaxError("Unexpected '" + c + "'");
+					}
+				} else if (depth == 0) {
+					// A literal or number runs up to the next delimiter.
+					while (position < length && ",}] \t\r\n".indexOf(json.charAt(position)) < 0) {
+						position++;
+					}
+				}
+			} while (depth > 0);
+		}
+
+		private void skipString() {
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					return;
+				}
+				if (c == '\\') {
+					next();
+				}
+			}
+		}
+
+		private void skipWhitespace() {
+			while (position < length && json.charAt(position) <= ' ') {
+				position++;
+			}
+		}
+
+		private char next() {
+			if (position >= length) {
+				throw syntaxError("Unexpected end of text");
+			}
+			return json.charAt(position++);
+		}
+
+		private char peek() {
+			if (position >= length) {
+				throw syntaxError("Unexpected end of text");
+			}
+			return json.charAt(position);
+		}
+
+		private JSONException syntaxError(String message) {
+			return new JSONException(message + " at " + position + ".");
+		}
+
+	}
+
+}
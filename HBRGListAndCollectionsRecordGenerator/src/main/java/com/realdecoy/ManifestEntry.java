@@ -0,0 +1,66 @@
+package com.realdecoy;
+
+/**
+ * What the export manifest knows of one content item: the size, modification
+ * time and SHA-256 hash of its content file when it was last exported, and
+ * where its record block was written in that export's output.
+ */
+public class ManifestEntry {
+
+	private long blockLength;
+	private long blockOffset;
+	private long contentLength;
+	private byte[] contentHash;
+	private final String itemKey;
+	private long lastModified;
+
+	public ManifestEntry(String itemKey) {
+		this.itemKey = itemKey;
+	}
+
+	public long getBlockLength() {
+		return blockLength;
+	}
+
+	public void setBlockLength(long blockLength) {
+		this.blockLength = blockLength;
+	}
+
+	public long getBlockOffset() {
+		return blockOffset;
+	}
+
+	public void setBlockOffset(long blockOffset) {
+		this.blockOffset = blockOffset;
+	}
+
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	public void setContentLength(long contentLength) {
+		this.contentLength = contentLength;
+	}
+
+	public byte[] getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(byte[] contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	// The content folder and item folder names, such as ReadingList/item.
+	public String getItemKey() {
+		return itemKey;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(long lastModified) {
+		this.lastModified = lastModified;
+	}
+
+}
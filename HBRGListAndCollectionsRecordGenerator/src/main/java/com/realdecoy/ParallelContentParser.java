@@ -0,0 +1,94 @@
+package com.realdecoy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks and parses content item folders on a bounded pool of worker threads
+ * and hands the parsed items to a handler on the calling thread in folder
+ * order, so the output is the same as parsing them one after another. Only a
+ * few items per worker are parsed ahead of the handler, which keeps memory
+ * bounded however large the export is.
+ */
+public class ParallelContentParser {
+
+	private static final int ITEMS_AHEAD_PER_THREAD = 4;
+
+	private final int parallelism;
+	private final ContentItemReader reader;
+
+	public ParallelContentParser(int parallelism, ContentItemReader reader) {
+		this.parallelism = parallelism;
+		this.reader = reader;
+	}
+
+	public void parse(List<File> contentItemFolders, ContentItemHandler handler) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, getThreadFactory());
+		ArrayDeque<Future<ContentItem>> pending = new ArrayDeque<>();
+		ArrayDeque<File> pendingFolders = new ArrayDeque<>();
+		Iterator<File> iterator = contentItemFolders.iterator();
+
+		try {
+			while (iterator.hasNext() || !pending.isEmpty()) {
+				while (iterator.hasNext() && pending.size() < parallelism * ITEMS_AHEAD_PER_THREAD) {
+					final File contentItemFolder = iterator.next();
+					pendingFolders.add(contentItemFolder);
+					pending.add(executor.submit(new Callable<ContentItem>() {
+						@Override
+						public ContentItem call() {
+							return reader.read(contentItemFolder);
+						}
+					}));
+				}
+
+				ContentItem contentItem = await(pending.remove());
+				File contentItemFolder = pendingFolders.remove();
+				if (contentItem != null) {
+					handler.handle(contentItemFolder, contentItem);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static ContentItem await(Future<ContentItem> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted whilst parsing content items.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException("Failed to parse content item.", e.getCause());
+		}
+	}
+
+	// Daemon threads, so a worker stuck on an unresponsive mount cannot keep the process alive.
+	private static ThreadFactory getThreadFactory() {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "content-parser-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+}
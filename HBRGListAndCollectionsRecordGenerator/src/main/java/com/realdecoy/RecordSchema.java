@@ -0,0 +1,196 @@
+package com.realdecoy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The columns of a record block and the content item fields they are made of,
+ * read from a JSON schema so a new content type or column needs no code
+ * change. The default schema, record-schema.json, is bundled with the
+ * generator and gives the record blocks it has always written.
+ *
+ * A schema has a columnDelimiter, a recordDelimiter and a list of columns, each
+ * written on a line of its own as its name, the column delimiter and its
+ * value. A value is a list of parts. A string part is written as it is,
+ * {"field": path} writes a string field of the item ("removeSpaces": true drops
+ * its spaces) and {"count": path} the number of strings in an array field. A
+ * column with "each": path is written once per string in that array, where
+ * {"element": true} writes the string and {"index": width} its position from 1,
+ * zero padded to the width. Paths are those of {@link JsonFieldExtractor},
+ * without the trailing [].
+ */
+public class RecordSchema {
+
+	private static final String DEFAULT_SCHEMA_RESOURCE = "/record-schema.json";
+	// Goes into the fingerprint, to be raised whenever the same content files and schema would give different record
+	// blocks, whether from how they are read or how they are encoded.
+	private static final String ENCODING_VERSION = "2";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	final Column[] columns;
+	final byte[] recordDelimiter;
+	private final HashMap<String, Integer> fieldIndexes = new HashMap<>();
+	private final List<String> fieldPaths = new ArrayList<>();
+	private final String fingerprint;
+
+	private RecordSchema(String source) {
+		JSONObject schema = new JSONObject(source);
+		String columnDelimiter = schema.getString("columnDelimiter");
+		recordDelimiter = schema.getString("recordDelimiter").getBytes(UTF_8);
+
+		JSONArray columnArray = schema.getJSONArray("columns");
+		columns = new Column[columnArray.length()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = parseColumn(columnArray.getJSONObject(i), columnDelimiter);
+		}
+		fingerprint = hash(ENCODING_VERSION + "\n" + System.lineSeparator() + "\n" + source);
+	}
+
+	public static RecordSchema load(File schemaFile) throws IOException {
+		return parse(new String(Files.readAllBytes(schemaFile.toPath()), UTF_8), schemaFile.getName());
+	}
+
+	public static RecordSchema loadDefault() throws IOException {
+		InputStream inputStream = RecordSchema.class.getResourceAsStream(DEFAULT_SCHEMA_RESOURCE);
+		if (inputStream == null) {
+			throw new IOException("The default record schema is missing: " + DEFAULT_SCHEMA_RESOURCE + ".");
+		}
+		try {
+			return parse(new String(inputStream.readAllBytes(), UTF_8), DEFAULT_SCHEMA_RESOURCE);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	// The paths to extract from each content item, in value index order.
+	public List<String> getFieldPaths() {
+		return Collections.unmodifiableList(fieldPaths);
+	}
+
+	// Changes with the schema and the line separator, the record blocks of an export with another fingerprint are not reused.
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	private static RecordSchema parse(String source, String schemaName) throws IOException {
+		try {
+			return new RecordSchema(source);
+		} catch (JSONException e) {
+			throw new IOException("Invalid record schema: " + schemaName + ".", e);
+		}
+	}
+
+	private Column parseColumn(JSONObject columnObject, String columnDelimiter) {
+		Column column = new Column();
+		String name = columnObject.getString("name");
+		column.prefix = name.concat(columnDelimiter).getBytes(UTF_8);
+		if (columnObject.has("each")) {
+			column.eachPath = columnObject.getString("each");
+			column.eachIndex = getFieldIndex(column.eachPath, true);
+		}
+
+		JSONArray partArray = columnObject.getJSONArray("value");
+		column.parts = new Part[partArray.length()];
+		for (int i = 0; i < column.parts.length; i++) {
+			Object partValue = partArray.get(i);
+			Part part = new Part();
+			if (partValue instanceof String) {
+				part.type = PartType.LITERAL;
+				part.bytes = ((String) partValue).getBytes(UTF_8);
+			} else {
+				parsePart((JSONObject) partValue, part);
+				if ((part.type == PartType.ELEMENT || part.type == PartType.INDEX) && column.eachIndex < 0) {
+					throw new JSONException("Column " + name + " has an element or index part but no each.");
+				}
+			}
+			column.parts[i] = part;
+		}
+		return column;
+	}
+
+	private void parsePart(JSONObject partObject, Part part) {
+		if (partObject.has("field")) {
+			part.type = PartType.FIELD;
+			part.fieldPath = partObject.getString("field");
+			part.valueIndex = getFieldIndex(part.fieldPath, false);
+			part.removeSpaces = partObject.optBoolean("removeSpaces");
+		} else if (partObject.has("count")) {
+			part.type = PartType.COUNT;
+			part.fieldPath = partObject.getString("count");
+			part.valueIndex = getFieldIndex(part.fieldPath, true);
+		} else if (partObject.has("element")) {
+			part.type = PartType.ELEMENT;
+		} else if (partObject.has("index")) {
+			part.type = PartType.INDEX;
+			part.width = partObject.getInt("index");
+		} else {
+			throw new JSONException("Unknown record schema part: " + partObject + ".");
+		}
+	}
+
+	private int getFieldIndex(String fieldPath, boolean array) {
+		if (fieldIndexes.containsKey(array ? fieldPath : fieldPath.concat("[]"))) {
+			throw new JSONException("Field is used both as a string and as an array: " + fieldPath + ".");
+		}
+		String extractorPath = array ? fieldPath.concat("[]") : fieldPath;
+		Integer index = fieldIndexes.get(extractorPath);
+		if (index == null) {
+			index = fieldPaths.size();
+			fieldIndexes.put(extractorPath, index);
+			fieldPaths.add(extractorPath);
+		}
+		return index;
+	}
+
+	private static String hash(String source) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+	}
+
+	static class Column {
+
+		int eachIndex = -1;
+		String eachPath;
+		Part[] parts;
+		// The name followed by the column delimiter.
+		byte[] prefix;
+
+	}
+
+	static class Part {
+
+		byte[] bytes;
+		String fieldPath;
+		boolean removeSpaces;
+		PartType type;
+		int valueIndex = -1;
+		int width;
+
+	}
+
+	enum PartType {
+		COUNT, ELEMENT, FIELD, INDEX, LITERAL
+	}
+
+}
@@ -0,0 +1,316 @@
+package com.realdecoy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONException;
+
+/**
+ * Encodes each content item as its record block, laid out by a
+ * {@link RecordSchema}, and writes it to the output file as soon as it is
+ * handed over, so nothing is held back until the export has been read. An
+ * item that is missing a field is logged and left out, the records around it
+ * are still written.
+ *
+ * Blocks are encoded as UTF-8 straight into one reusable direct buffer that is
+ * written to the file channel whenever it fills, so encoding a record makes no
+ * garbage. Every field is checked before the first byte of a block is written,
+ * a block that has been started is always finished.
+ *
+ * The block of an item unchanged since the previous export is copied across
+ * from the previous output rather than encoded again. Records go to a
+ * temporary file next to the output, which {@link #finish()} moves over the
+ * output before writing the manifest the next run reads. Should no record be
+ * written, the previous output and manifest are left as they were.
+ */
+public class RecordWriter implements ContentItemHandler, Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.forName("UTF-8"));
+	private static final Logger LOGGER = Logger.getLogger(RecordWriter.class.getName());
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private int copiedCount = 0;
+	private final byte[] digits = new byte[10];
+	private int failedCount = 0;
+	// Bytes written to the output channel so far, those still in the buffer not included.
+	private long flushedLength = 0;
+	private final ExportManifest manifest = new ExportManifest();
+	private final File manifestFile;
+	private FileChannel outputChannel;
+	private final File outputFile;
+	private FileChannel previousOutputChannel;
+	private int recordCount = 0;
+	private final RecordSchema schema;
+	private File temporaryFile;
+
+	public RecordWriter(File outputFile, File manifestFile, RecordSchema schema) {
+		this.manifestFile = manifestFile;
+		this.outputFile = outputFile;
+		this.schema = schema;
+	}
+
+	@Override
+	public void handle(File contentItemFolder, ContentItem contentItem) throws IOException {
+		if (contentItem.isUnchanged()) {
+			copyBlock(contentItem.getManifestEntry());
+			copiedCount++;
+			recordCount++;
+			return;
+		}
+
+		try {
+			checkFields(contentItem);
+		} catch (JSONException e) {
+			LOGGER.log(Level.SEVERE, "Error encountered while encoding content item: " + contentItemFolder.getName() + ".", e);
+			failedCount++;
+			return;
+		}
+
+		openOutput();
+		long blockOffset = getPosition();
+		encode(contentItem);
+		addToManifest(contentItem.getManifestEntry(), blockOffset);
+		recordCount++;
+	}
+
+	// Moves the records written over the output file and writes the manifest of them.
+	public void finish() throws IOException {
+		if (outputChannel != null) {
+			flush();
+		}
+		closeChannels();
+		if (temporaryFile == null) {
+			return;
+		}
+
+		Files.move(temporaryFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		temporaryFile = null;
+		try {
+			manifest.write(manifestFile, outputFile, schema.getFingerprint());
+		} catch (IOException e) {
+			// Without its manifest the next run parses every item again, a stale one would copy the wrong blocks.
+			LOGGER.log(Level.WARNING, "Error encountered while writing the export manifest.", e);
+			manifestFile.delete();
+		}
+	}
+
+	// Records copied across unchanged from the previous output, these are included in the record count.
+	public int getCopiedCount() {
+		return copiedCount;
+	}
+
+	// Content items that could not be encoded and were left out.
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	// Discards the records written unless the output has been finished.
+	@Override
+	public void close() throws IOException {
+		closeChannels();
+		if (temporaryFile != null) {
+			temporaryFile.delete();
+			temporaryFile = null;
+		}
+	}
+
+	private void addToManifest(ManifestEntry entry, long blockOffset) {
+		if (entry != null) {
+			entry.setBlockOffset(blockOffset);
+			entry.setBlockLength(getPosition() - blockOffset);
+			manifest.add(entry);
+		}
+	}
+
+	// Fails like JSONObject.getString would for the first field the schema needs that the item does not have.
+	private void checkFields(ContentItem contentItem) {
+		for (RecordSchema.Column column : schema.columns) {
+			if (column.eachIndex >= 0 && contentItem.getValue(column.eachIndex) == null) {
+				throw new JSONException("JSONObject[\"" + column.eachPath + "\"] not found.");
+			}
+			for (RecordSchema.Part part : column.parts) {
+				if (part.valueIndex >= 0 && contentItem.getValue(part.valueIndex) == null) {
+					throw new JSONException("JSONObject[\"" + part.fieldPath + "\"] not found.");
+				}
+			}
+		}
+	}
+
+	private void closeChannels() throws IOException {
+		try {
+			if (outputChannel != null) {
+				outputChannel.close();
+				outputChannel = null;
+			}
+		} finally {
+			if (previousOutputChannel != null) {
+				previousOutputChannel.close();
+				previousOutputChannel = null;
+			}
+		}
+	}
+
+	private void copyBlock(ManifestEntry entry) throws IOException {
+		if (previousOutputChannel == null) {
+			previousOutputChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.READ);
+		}
+		openOutput();
+		flush();
+
+		long blockOffset = getPosition();
+		long position = entry.getBlockOffset();
+		long end = position + entry.getBlockLength();
+		while (position < end) {
+			long transferred = previousOutputChannel.transferTo(position, end - position, outputChannel);
+			if (transferred <= 0) {
+				throw new IOException("The previous output ends before the record block of " + entry.getItemKey() + ".");
+			}
+			position += transferred;
+		}
+		flushedLength += entry.getBlockLength();
+		addToManifest(entry, blockOffset);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void encode(ContentItem contentItem) throws IOException {
+		for (RecordSchema.Column column : schema.columns) {
+			if (column.eachIndex < 0) {
+				putColumn(column, contentItem, null, 0);
+				continue;
+			}
+			List<String> elements = (List<String>) contentItem.getValue(column.eachIndex);
+			for (int i = 0; i < elements.size(); i++) {
+				putColumn(column, contentItem, elements, i);
+			}
+		}
+		put(schema.recordDelimiter);
+		put(LINE_SEPARATOR);
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			flushedLength += outputChannel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private long getPosition() {
+		return flushedLength + buffer.position();
+	}
+
+	private void openOutput() throws IOException {
+		if (outputChannel == null) {
+			LOGGER.info("Writing data to file.");
+			File directory = outputFile.getAbsoluteFile().getParentFile();
+			temporaryFile = File.createTempFile(outputFile.getName().concat(".new"), ".tmp", directory);
+			outputChannel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.WRITE);
+		}
+	}
+
+	private void put(byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			int length = Math.min(bytes.length - offset, buffer.remaining());
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void putColumn(RecordSchema.Column column, ContentItem contentItem, List<String> elements, int element) throws IOException {
+		put(column.prefix);
+		for (RecordSchema.Part part : column.parts) {
+			switch (part.type) {
+			case COUNT:
+				putNumber(((List<String>) contentItem.getValue(part.valueIndex)).size(), 0);
+				break;
+			case ELEMENT:
+				putString(elements.get(element), false);
+				break;
+			case FIELD:
+				putString((String) contentItem.getValue(part.valueIndex), part.removeSpaces);
+				break;
+			case INDEX:
+				putNumber(element + 1, part.width);
+				break;
+			case LITERAL:
+				put(part.bytes);
+				break;
+			}
+		}
+		put(LINE_SEPARATOR);
+	}
+
+	// Writes the decimal digits of a non-negative number, zero padded to the width.
+	private void putNumber(int value, int width) throws IOException {
+		int start = digits.length;
+		do {
+			digits[--start] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		for (int i = digits.length - start; i < width; i++) {
+			putByte('0');
+		}
+		for (int i = start; i < digits.length; i++) {
+			putByte(digits[i]);
+		}
+	}
+
+	private void putByte(int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put((byte) b);
+	}
+
+	// Encodes the value as UTF-8, an unpaired surrogate is written as '?' as String.getBytes does.
+	private void putString(String value, boolean removeSpaces) throws IOException {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (buffer.remaining() < 4) {
+				flush();
+			}
+			if (c < 0x80) {
+				if (c != ' ' || !removeSpaces) {
+					buffer.put((byte) c);
+				}
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				buffer.put((byte) '?');
+			} else {
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+}
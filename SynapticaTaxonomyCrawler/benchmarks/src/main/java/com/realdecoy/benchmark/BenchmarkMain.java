@@ -0,0 +1,32 @@
+package com.realdecoy.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH command line and always
+ * adds the GC profiler, so every run reports allocation per operation
+ * (gc.alloc.rate.norm) next to the score.
+ */
+public class BenchmarkMain {
+
+	public static void main(String... args) throws CommandLineOptionException, IOException, RunnerException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+		if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListWithParams() || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+			// Help and listings are left to JMH itself.
+			Main.main(args);
+			return;
+		}
+
+		new Runner(new OptionsBuilder().parent(commandLineOptions).addProfiler(GCProfiler.class).build()).run();
+	}
+
+}
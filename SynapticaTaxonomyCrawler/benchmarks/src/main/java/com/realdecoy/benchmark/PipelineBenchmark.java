@@ -0,0 +1,218 @@
+package com.realdecoy.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.realdecoy.index.DimensionIndex;
+import com.realdecoy.mock.TaxonomyGenerator;
+import com.realdecoy.model.CompactTaxonomy;
+import com.realdecoy.model.TaxonomyItem;
+import com.realdecoy.parser.CompactTaxonomyBuilder;
+import com.realdecoy.parser.TaxonomyItemHandler;
+import com.realdecoy.parser.TaxonomyItemTypeAdapter;
+import com.realdecoy.parser.TaxonomyStreamParser;
+import com.realdecoy.parser.TaxonomyTreeWalker;
+import com.realdecoy.util.IdUtil;
+import com.realdecoy.writer.ParallelTaxonomyTransformer;
+import com.realdecoy.writer.StaxDimensionWriter;
+import com.realdecoy.writer.TaxonomyItemWriter;
+
+/**
+ * The stages of a dimension crawl, separately and end to end, over a synthetic
+ * report held in memory. Scores are reports processed per second; run through
+ * {@link BenchmarkMain} to get allocation rates from the GC profiler as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class PipelineBenchmark {
+
+	private static final String DIMENSION_NAME = "HBP_ET_Benchmark";
+	private static final Type LIST_TYPE = new TypeToken<ArrayList<TaxonomyItem>>() {
+	}.getType();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Param({ "10000", "100000", "1000000" })
+	public int nodeCount;
+
+	@Param({ "6" })
+	public int depth;
+
+	@Param({ "10" })
+	public int fanOut;
+
+	private CompactTaxonomy compactTaxonomy;
+	private final Gson gson = new GsonBuilder().registerTypeAdapter(TaxonomyItem.class, new TaxonomyItemTypeAdapter()).create();
+	private final Gson reflectiveGson = new Gson();
+	private byte[] json;
+	private File outputFile;
+	private ArrayList<TaxonomyItem> taxonomyItems;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		json = new TaxonomyGenerator(nodeCount, depth, fanOut).generate();
+		taxonomyItems = deserialize();
+		compactTaxonomy = parseCompact();
+		outputFile = File.createTempFile("dimension-benchmark", ".xml");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		outputFile.delete();
+		DimensionIndex.getIndexFile(outputFile).delete();
+	}
+
+	// JSON into TaxonomyItem trees through the TaxonomyItem type adapter, as the buffered ingestion mode does.
+	@Benchmark
+	public ArrayList<TaxonomyItem> deserialize() {
+		return gson.fromJson(openReader(), LIST_TYPE);
+	}
+
+	// The same with Gson's reflective binding, which the buffered mode used before the type adapter.
+	@Benchmark
+	public ArrayList<TaxonomyItem> deserializeReflective() {
+		return reflectiveGson.fromJson(openReader(), LIST_TYPE);
+	}
+
+	// The streaming parser handing each item on as soon as it is read.
+	@Benchmark
+	public int parse() throws IOException {
+		TaxonomyStreamParser parser = new TaxonomyStreamParser(new TaxonomyItemHandler() {
+			@Override
+			public void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) {
+				// Items are only counted.
+			}
+		});
+		return parser.parse(openReader());
+	}
+
+	// JSON into the column oriented taxonomy through the streaming parser, as the compact ingestion mode does.
+	@Benchmark
+	public CompactTaxonomy parseCompact() throws IOException {
+		CompactTaxonomyBuilder builder = new CompactTaxonomyBuilder();
+		new TaxonomyStreamParser(builder).parse(openReader());
+		return builder.build();
+	}
+
+	// A parsed tree to a dimension file, ids and paths included.
+	@Benchmark
+	public int write() throws IOException {
+		StaxDimensionWriter writer = new StaxDimensionWriter(outputFile, true);
+		try {
+			writer.writeRoot(DIMENSION_NAME);
+			TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(writer, DIMENSION_NAME, new IdUtil());
+			TaxonomyTreeWalker.walk(taxonomyItems, taxonomyItemWriter, null, 0);
+			writer.finish();
+			return taxonomyItemWriter.getItemCount();
+		} finally {
+			writer.close();
+		}
+	}
+
+	// The same as write, also recording every node's location and writing the index sidecar.
+	@Benchmark
+	public int writeIndexed() throws IOException {
+		StaxDimensionWriter writer = new StaxDimensionWriter(outputFile, true, true);
+		try {
+			writer.writeRoot(DIMENSION_NAME);
+			TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(writer, DIMENSION_NAME, new IdUtil());
+			TaxonomyTreeWalker.walk(taxonomyItems, taxonomyItemWriter, null, 0);
+			writer.finish();
+			return taxonomyItemWriter.getItemCount();
+		} finally {
+			writer.close();
+		}
+	}
+
+	// The same as write, reading the terms from the compact taxonomy.
+	@Benchmark
+	public int writeCompact() throws IOException {
+		StaxDimensionWriter writer = new StaxDimensionWriter(outputFile, true);
+		try {
+			writer.writeRoot(DIMENSION_NAME);
+			TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(writer, DIMENSION_NAME, new IdUtil());
+			TaxonomyTreeWalker.walk(compactTaxonomy, taxonomyItemWriter);
+			writer.finish();
+			return taxonomyItemWriter.getItemCount();
+		} finally {
+			writer.close();
+		}
+	}
+
+	// The same as write, with the top-level branches rendered on the fork/join pool.
+	@Benchmark
+	public int writeParallel() throws IOException {
+		StaxDimensionWriter writer = new StaxDimensionWriter(outputFile, true);
+		try {
+			writer.writeRoot(DIMENSION_NAME);
+			int itemCount = new ParallelTaxonomyTransformer(DIMENSION_NAME, null).transform(taxonomyItems, writer);
+			writer.finish();
+			return itemCount;
+		} finally {
+			writer.close();
+		}
+	}
+
+	// Report bytes to dimension file through the streaming parser.
+	@Benchmark
+	public int endToEnd() throws IOException {
+		StaxDimensionWriter writer = new StaxDimensionWriter(outputFile, true);
+		try {
+			writer.writeRoot(DIMENSION_NAME);
+			TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(writer, DIMENSION_NAME, new IdUtil());
+			new TaxonomyStreamParser(taxonomyItemWriter).parse(openReader());
+			writer.finish();
+			return taxonomyItemWriter.getItemCount();
+		} finally {
+			writer.close();
+		}
+	}
+
+	// Report bytes to dimension file through a parsed tree, the default buffered mode.
+	@Benchmark
+	public int endToEndBuffered() throws IOException {
+		ArrayList<TaxonomyItem> items = deserialize();
+		StaxDimensionWriter writer = new StaxDimensionWriter(outputFile, true);
+		try {
+			writer.writeRoot(DIMENSION_NAME);
+			TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(writer, DIMENSION_NAME, new IdUtil());
+			TaxonomyTreeWalker.walk(items, taxonomyItemWriter, null, 0);
+			writer.finish();
+			return taxonomyItemWriter.getItemCount();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private Reader openReader() {
+		return new InputStreamReader(new ByteArrayInputStream(json), UTF_8);
+	}
+
+}
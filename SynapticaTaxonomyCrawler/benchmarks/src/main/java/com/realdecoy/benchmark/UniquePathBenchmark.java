@@ -0,0 +1,83 @@
+package com.realdecoy.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.realdecoy.writer.UniquePath;
+
+/**
+ * Cost of producing the UNIQUE_PATH of every node in a pre-order walk, per
+ * node, as the taxonomy gets deeper. Run with -prof gc and compare
+ * gc.alloc.rate.norm: it grows with depth for the concatenated paths and
+ * stays at zero for {@link UniquePath}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UniquePathBenchmark {
+
+	private static final int NODE_COUNT = 4096;
+
+	@Param({ "1", "8", "64", "512" })
+	public int depth;
+
+	private int[] depths;
+	private String[] ids;
+	private final UniquePath uniquePath = new UniquePath();
+
+	@Setup
+	public void setUp() {
+		// Chains of the requested depth hanging off the root, in the order the walk visits them.
+		depths = new int[NODE_COUNT];
+		ids = new String[NODE_COUNT];
+		for (int i = 0; i < NODE_COUNT; i++) {
+			depths[i] = i % depth;
+			ids[i] = String.valueOf(i + 1);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NODE_COUNT)
+	public void uniquePath(Blackhole blackhole) {
+		for (int i = 0; i < NODE_COUNT; i++) {
+			UniquePath path = uniquePath.enter(depths[i], ids[i]);
+			blackhole.consume(path.getChars());
+			blackhole.consume(path.length());
+		}
+	}
+
+	// The way paths were built before, one concatenated string per node holding a copy of every ancestor's path.
+	@Benchmark
+	@OperationsPerInvocation(NODE_COUNT)
+	public void concatenatedPath(Blackhole blackhole) {
+		ArrayList<String> uniquePaths = new ArrayList<>();
+		for (int i = 0; i < NODE_COUNT; i++) {
+			int nodeDepth = depths[i];
+			String path = nodeDepth == 0 ? ids[i] : uniquePaths.get(nodeDepth - 1).concat(",").concat(ids[i]);
+			if (nodeDepth < uniquePaths.size()) {
+				uniquePaths.set(nodeDepth, path);
+			} else {
+				uniquePaths.add(path);
+			}
+			blackhole.consume(path);
+		}
+	}
+
+}
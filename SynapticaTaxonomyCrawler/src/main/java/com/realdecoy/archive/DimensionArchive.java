@@ -0,0 +1,298 @@
+package com.realdecoy.archive;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Publishes new dimension output over the live output and keeps a bounded
+ * history of gzip compressed backups.
+ *
+ * New output is written to a staging file next to the live one, forced to disk
+ * and moved over the live file with an atomic move, so readers see either the
+ * previous file or the complete new one and never a missing or partial file.
+ * The previous file is compressed into a timestamped backup before it is
+ * replaced. A sharded output folder cannot be swapped in one move, so it is
+ * renamed to its backup, the new folder is moved in and the backup's files are
+ * compressed afterwards. Between the two moves there is briefly no live folder.
+ *
+ * Backups are named name.backup.yyyy-MM-dd.HH-mm-ss.SSS.gz. Uncompressed
+ * backups left by earlier versions are recognised and count towards the
+ * retention limit.
+ */
+public class DimensionArchive {
+
+	private static final String BACKUP_DATE_FORMAT = "yyyy-MM-dd.HH-mm-ss.SSS";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String GZIP_SUFFIX = ".gz";
+	private static final Logger LOGGER = Logger.getLogger(DimensionArchive.class.getName());
+
+	private final Pattern backupPattern;
+	private final File directory;
+	private final int maxBackups;
+	private final String name;
+
+	// Archives the output called name in the directory, which may be a file or a folder of shards.
+	public DimensionArchive(File directory, String name, int maxBackups) {
+		this.directory = directory.getAbsoluteFile();
+		this.name = name;
+		this.maxBackups = maxBackups;
+		this.backupPattern = Pattern.compile(Pattern.quote(name) + "\\.backup\\.\\d{4}-\\d{2}-\\d{2}\\.\\d{2}-\\d{2}-\\d{2}(\\.\\d{3})?(" + Pattern.quote(GZIP_SUFFIX) + ")?");
+	}
+
+	public File getLiveFile() {
+		return new File(directory, name);
+	}
+
+	// A file, or a folder for sharded output, next to the live output that new output is written to before it is published.
+	public File createStagingFile(boolean folder) throws IOException {
+		if (folder) {
+			return createStagingFolder();
+		}
+		// The suffix keeps the prefix of a short name at the three characters createTempFile needs.
+		return File.createTempFile(name.concat(".new"), ".tmp", directory);
+	}
+
+	// Backs the live output up and replaces it with the staged output. Returns the backup, null when there was nothing
+	// to back up. The live output is left as it was should this fail.
+	public File publish(File stagingFile) throws IOException {
+		File liveFile = getLiveFile();
+		File backupFile = null;
+		force(stagingFile);
+
+		if (stagingFile.isDirectory()) {
+			if (liveFile.exists()) {
+				backupFile = new File(directory, getBackupName(false));
+				move(liveFile, backupFile);
+			}
+			try {
+				move(stagingFile, liveFile);
+			} catch (IOException e) {
+				if (backupFile != null) {
+					move(backupFile, liveFile);
+				}
+				throw e;
+			}
+			if (backupFile != null) {
+				compressFolder(backupFile);
+			}
+		} else {
+			if (liveFile.exists()) {
+				backupFile = new File(directory, getBackupName(true));
+				compress(liveFile, backupFile);
+			}
+			move(stagingFile, liveFile);
+		}
+
+		forceDirectory(directory);
+		return backupFile;
+	}
+
+	// Called once the staged output has been published. Sidecars are files named after the staged output plus a
+	// suffix, each is moved over the live output's sidecar of the same suffix, or when the staged output has none the
+	// live one is removed as out of date. A sidecar that cannot be moved has its live one removed too, so none is left
+	// describing the previous output, and the first failure is thrown once every sidecar has been tried.
+	public void publishSidecars(File stagingFile, String... sidecarSuffixes) throws IOException {
+		File liveFile = getLiveFile();
+		IOException failure = null;
+
+		for (String suffix : sidecarSuffixes) {
+			File stagedSidecar = new File(stagingFile.getPath().concat(suffix));
+			File liveSidecar = new File(liveFile.getPath().concat(suffix));
+			try {
+				if (stagedSidecar.exists()) {
+					move(stagedSidecar, liveSidecar);
+				} else {
+					Files.deleteIfExists(liveSidecar.toPath());
+				}
+			} catch (IOException e) {
+				if (liveSidecar.exists() && !liveSidecar.delete()) {
+					LOGGER.warning("Failed to delete out of date sidecar: " + liveSidecar.getName() + ".");
+				}
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+
+		forceDirectory(directory);
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	// Deletes staged output that will not be published, along with its sidecars.
+	public void discard(File stagingFile, String... sidecarSuffixes) {
+		if (stagingFile.exists() && !deleteRecursively(stagingFile)) {
+			LOGGER.warning("Failed to delete staged dimension output: " + stagingFile.getName() + ".");
+		}
+		for (String suffix : sidecarSuffixes) {
+			new File(stagingFile.getPath().concat(suffix)).delete();
+		}
+	}
+
+	// Deletes the oldest backups beyond the retention limit and returns how many were deleted.
+	public int prune() throws IOException {
+		ArrayList<Path> backups = new ArrayList<>();
+
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), new DirectoryStream.Filter<Path>() {
+			@Override
+			public boolean accept(Path path) {
+				return backupPattern.matcher(path.getFileName().toString()).matches();
+			}
+		});
+		try {
+			for (Path path : stream) {
+				backups.add(path);
+			}
+		} finally {
+			stream.close();
+		}
+
+		if (backups.size() <= maxBackups) {
+			return 0;
+		}
+
+		// Backup names differ only in their timestamps, so they sort in date order as text, which saves a stat per backup.
+		Collections.sort(backups);
+
+		int deleted = 0;
+		for (int i = 0; i < backups.size() - maxBackups; i++) {
+			File backup = backups.get(i).toFile();
+			LOGGER.info("Deleting backup: " + backup.getName() + ". Reason: Max archive file threshold reached.");
+			if (deleteRecursively(backup)) {
+				deleted++;
+			} else {
+				LOGGER.warning("Failed to delete backup: " + backup.getName() + ".");
+			}
+		}
+		return deleted;
+	}
+
+	// Not createTempDirectory, which makes the folder private to its owner and so the published shards with it. A plain
+	// folder gets the default permissions, as a published file does.
+	private File createStagingFolder() throws IOException {
+		while (true) {
+			File stagingFolder = new File(directory, name + ".new" + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				return Files.createDirectory(stagingFolder.toPath()).toFile();
+			} catch (FileAlreadyExistsException e) {
+				// Taken by another staging folder, try another name.
+			}
+		}
+	}
+
+	private String getBackupName(boolean compressed) {
+		String backupName = name.concat(".backup.").concat(new SimpleDateFormat(BACKUP_DATE_FORMAT).format(new Date()));
+		return compressed ? backupName.concat(GZIP_SUFFIX) : backupName;
+	}
+
+	// Written to a temporary file first, so a backup is either complete or absent.
+	private static void compress(File source, File target) throws IOException {
+		File temporaryFile = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try {
+			InputStream inputStream = new FileInputStream(source);
+			try {
+				OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(temporaryFile), BUFFER_SIZE);
+				try {
+					byte[] buffer = new byte[BUFFER_SIZE];
+					int read;
+					while ((read = inputStream.read(buffer)) != -1) {
+						outputStream.write(buffer, 0, read);
+					}
+				} finally {
+					outputStream.close();
+				}
+			} finally {
+				inputStream.close();
+			}
+			move(temporaryFile, target);
+		} finally {
+			temporaryFile.delete();
+		}
+	}
+
+	// Replaces each file of the folder with a compressed copy. A file that fails is left uncompressed.
+	private static void compressFolder(File folder) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isFile() && !file.getName().endsWith(GZIP_SUFFIX)) {
+				try {
+					compress(file, new File(folder, file.getName().concat(GZIP_SUFFIX)));
+					Files.delete(file.toPath());
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to compress backup file: " + file.getName() + ".", e);
+				}
+			}
+		}
+	}
+
+	private static boolean deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		return file.delete();
+	}
+
+	// Flushes a file, or every file of a folder, to disk so the move cannot publish data still in the page cache.
+	private static void force(File file) throws IOException {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				force(child);
+			}
+			return;
+		}
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		try {
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	// Makes the renames durable. Not every platform can open a directory, there the moves are left to the file system.
+	private static void forceDirectory(File directory) {
+		try {
+			FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "Could not sync folder: " + directory.getName() + ".", e);
+		}
+	}
+
+	private static void move(File source, File target) throws IOException {
+		Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
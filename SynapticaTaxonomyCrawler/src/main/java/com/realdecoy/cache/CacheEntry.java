@@ -0,0 +1,46 @@
+package com.realdecoy.cache;
+
+public class CacheEntry {
+
+	private String contentHash;
+
+	private String entityTag;
+
+	private String lastModified;
+
+	private String outputSettings;
+
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	public void setEntityTag(String entityTag) {
+		this.entityTag = entityTag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(String lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	// The dimension name and output options the file was written with, the file is rebuilt when they change.
+	public String getOutputSettings() {
+		return outputSettings;
+	}
+
+	public void setOutputSettings(String outputSettings) {
+		this.outputSettings = outputSettings;
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.realdecoy.cache;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Remembers the validators and content hash of the last report each dimension
+ * was built from, and the output settings it was built with. Entries live in a hidden folder under the output folder, one
+ * properties file per url and dimension file so concurrent jobs never share one.
+ */
+public class FetchCache {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String CACHE_FOLDER = ".crawler-cache";
+	private static final String CONTENT_HASH = "contentHash";
+	private static final String ENTITY_TAG = "entityTag";
+	private static final String FILE_NAME = "fileName";
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final String LAST_MODIFIED = "lastModified";
+	private static final String OUTPUT_SETTINGS = "outputSettings";
+	private static final String URL = "url";
+
+	private final File directory;
+
+	public FetchCache(String outputFolderPath) throws IOException {
+		directory = new File(new File(outputFolderPath).getAbsolutePath().concat(File.separator).concat(CACHE_FOLDER));
+
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Failed to create cache folder: " + directory.getAbsolutePath() + ".");
+		}
+	}
+
+	private static String hash(byte[] bytes) {
+		MessageDigest digest = newDigest();
+		return toHex(digest.digest(bytes));
+	}
+
+	// Returns null when nothing has been cached for this url and file yet.
+	public CacheEntry get(String url, String fileName) throws IOException {
+		File entryFile = getEntryFile(url, fileName);
+
+		if (!entryFile.exists()) {
+			return null;
+		}
+
+		Properties properties = new Properties();
+		InputStream inputStream = new FileInputStream(entryFile);
+		try {
+			properties.load(inputStream);
+		} finally {
+			inputStream.close();
+		}
+
+		CacheEntry entry = new CacheEntry();
+		entry.setContentHash(properties.getProperty(CONTENT_HASH));
+		entry.setEntityTag(properties.getProperty(ENTITY_TAG));
+		entry.setLastModified(properties.getProperty(LAST_MODIFIED));
+		entry.setOutputSettings(properties.getProperty(OUTPUT_SETTINGS));
+		return entry;
+	}
+
+	public void put(String url, String fileName, CacheEntry entry) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(URL, url);
+		properties.setProperty(FILE_NAME, fileName);
+		if (entry.getContentHash() != null) {
+			properties.setProperty(CONTENT_HASH, entry.getContentHash());
+		}
+		if (entry.getEntityTag() != null) {
+			properties.setProperty(ENTITY_TAG, entry.getEntityTag());
+		}
+		if (entry.getLastModified() != null) {
+			properties.setProperty(LAST_MODIFIED, entry.getLastModified());
+		}
+		if (entry.getOutputSettings() != null) {
+			properties.setProperty(OUTPUT_SETTINGS, entry.getOutputSettings());
+		}
+
+		File entryFile = getEntryFile(url, fileName);
+		File temporaryFile = File.createTempFile(entryFile.getName(), ".tmp", directory);
+		OutputStream outputStream = new FileOutputStream(temporaryFile);
+		try {
+			properties.store(outputStream, null);
+		} finally {
+			outputStream.close();
+		}
+		Files.move(temporaryFile.toPath(), entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Copies the response body to a temporary file in the cache folder and returns its content hash.
+	// The caller owns the spool file and must delete it.
+	public String spool(InputStream inputStream, File spoolFile) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		InputStream bufferedStream = new BufferedInputStream(inputStream, BUFFER_SIZE);
+		OutputStream outputStream = new FileOutputStream(spoolFile);
+		try {
+			int read;
+			while ((read = bufferedStream.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+				outputStream.write(buffer, 0, read);
+			}
+		} finally {
+			outputStream.close();
+			bufferedStream.close();
+		}
+
+		return toHex(digest.digest());
+	}
+
+	public File createSpoolFile() throws IOException {
+		return File.createTempFile("report", ".spool", directory);
+	}
+
+	private File getEntryFile(String url, String fileName) {
+		String key = hash((url + "\n" + fileName).getBytes(Charset.forName("UTF-8")));
+		return new File(directory, key.concat(".properties"));
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.realdecoy.delta;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Works out what changed between the snapshots of two runs and writes it as a
+ * JSON delta next to the dimension file, so a downstream load can apply the
+ * changes instead of reloading the whole dimension.
+ *
+ * Both snapshots are sorted by key and read side by side, so memory use does
+ * not grow with the taxonomy. Each changed node is listed once with its
+ * current values and the kinds of change: added, removed, renamed, reparented
+ * and uniquePath, or id should the stable id store have been reset. A changed
+ * node also carries the previous values of whatever changed, a removed node
+ * carries its values as they were.
+ */
+public class DimensionDeltaWriter {
+
+	public static final String DELTA_FILE_SUFFIX = ".delta.json";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private int addedCount = 0;
+	private int changedCount = 0;
+	private final String dimensionName;
+	private int removedCount = 0;
+	private int renamedCount = 0;
+	private int reparentedCount = 0;
+	private int uniquePathCount = 0;
+
+	public DimensionDeltaWriter(String dimensionName) {
+		this.dimensionName = dimensionName;
+	}
+
+	// Writes the changes from the previous snapshot to the current one and returns the number of nodes listed.
+	public int write(File previousSnapshotFile, File snapshotFile, File deltaFile) throws IOException {
+		TaxonomySnapshotReader previousSnapshot = new TaxonomySnapshotReader(previousSnapshotFile);
+		try {
+			TaxonomySnapshotReader snapshot = new TaxonomySnapshotReader(snapshotFile);
+			try {
+				JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(deltaFile), UTF_8));
+				try {
+					writer.setIndent("  ");
+					writer.beginObject();
+					writer.name("dimensionName").value(dimensionName);
+					writer.name("previousNodes").value(previousSnapshot.getNodeCount());
+					writer.name("nodes").value(snapshot.getNodeCount());
+					writer.name("changes").beginArray();
+					writeChanges(previousSnapshot, snapshot, writer);
+					writer.endArray();
+					writer.name("added").value(addedCount);
+					writer.name("removed").value(removedCount);
+					writer.name("renamed").value(renamedCount);
+					writer.name("reparented").value(reparentedCount);
+					writer.name("uniquePathChanged").value(uniquePathCount);
+					writer.endObject();
+				} finally {
+					writer.close();
+				}
+			} finally {
+				snapshot.close();
+			}
+		} finally {
+			previousSnapshot.close();
+		}
+		return getChangedCount();
+	}
+
+	public int getAddedCount() {
+		return addedCount;
+	}
+
+	// Nodes listed in the last delta, a node with several kinds of change counts once.
+	public int getChangedCount() {
+		return addedCount + removedCount + changedCount;
+	}
+
+	public int getRemovedCount() {
+		return removedCount;
+	}
+
+	public int getRenamedCount() {
+		return renamedCount;
+	}
+
+	public int getReparentedCount() {
+		return reparentedCount;
+	}
+
+	public int getUniquePathCount() {
+		return uniquePathCount;
+	}
+
+	private void writeChanges(TaxonomySnapshotReader previousSnapshot, TaxonomySnapshotReader snapshot, JsonWriter writer) throws IOException {
+		SnapshotNode previousNode = previousSnapshot.next();
+		SnapshotNode node = snapshot.next();
+
+		while (previousNode != null || node != null) {
+			int comparison = previousNode == null ? 1 : node == null ? -1 : compareKeys(previousNode.getKey(), node.getKey());
+
+			if (comparison < 0) {
+				writer.beginObject();
+				writeChangeKind(writer, "removed");
+				writeValues(writer, previousNode);
+				writer.endObject();
+				removedCount++;
+				previousNode = previousSnapshot.next();
+			} else if (comparison > 0) {
+				writer.beginObject();
+				writeChangeKind(writer, "added");
+				writeValues(writer, node);
+				writer.endObject();
+				addedCount++;
+				node = snapshot.next();
+			} else {
+				writeChange(writer, previousNode, node);
+				previousNode = previousSnapshot.next();
+				node = snapshot.next();
+			}
+		}
+	}
+
+	private void writeChange(JsonWriter writer, SnapshotNode previousNode, SnapshotNode node) throws IOException {
+		boolean renamed = !equals(previousNode.getName(), node.getName());
+		boolean reparented = !equals(previousNode.getParentUid(), node.getParentUid()) || !equals(previousNode.getParent(), node.getParent());
+		boolean uniquePathChanged = !equals(previousNode.getUniquePath(), node.getUniquePath());
+		boolean idChanged = !equals(previousNode.getGeneratedUid(), node.getGeneratedUid());
+		if (!renamed && !reparented && !uniquePathChanged && !idChanged) {
+			return;
+		}
+
+		writer.beginObject();
+		writer.name("change").beginArray();
+		if (idChanged) {
+			writer.value("id");
+		}
+		if (renamed) {
+			writer.value("renamed");
+			renamedCount++;
+		}
+		if (reparented) {
+			writer.value("reparented");
+			reparentedCount++;
+		}
+		if (uniquePathChanged) {
+			writer.value("uniquePath");
+			uniquePathCount++;
+		}
+		writer.endArray();
+		writeValues(writer, node);
+
+		writer.name("previous").beginObject();
+		if (idChanged) {
+			writer.name("id").value(previousNode.getGeneratedUid());
+		}
+		if (renamed) {
+			writer.name("name").value(previousNode.getName());
+		}
+		if (reparented) {
+			writer.name("parent").value(previousNode.getParent());
+			writer.name("parentUid").value(previousNode.getParentUid());
+		}
+		if (uniquePathChanged) {
+			writer.name("uniquePath").value(previousNode.getUniquePath());
+		}
+		writer.endObject();
+		writer.endObject();
+		changedCount++;
+	}
+
+	private static void writeChangeKind(JsonWriter writer, String kind) throws IOException {
+		writer.name("change").beginArray().value(kind).endArray();
+	}
+
+	private static void writeValues(JsonWriter writer, SnapshotNode node) throws IOException {
+		writer.name("uid").value(node.getUid());
+		writer.name("id").value(node.getGeneratedUid());
+		writer.name("name").value(node.getName());
+		writer.name("parent").value(node.getParent());
+		writer.name("parentUid").value(node.getParentUid());
+		writer.name("uniquePath").value(node.getUniquePath());
+	}
+
+	// Orders keys by code point, which is the unsigned UTF-8 byte order the snapshots are sorted in.
+	private static int compareKeys(String first, String second) {
+		int length = Math.min(first.length(), second.length());
+		int i = 0;
+		while (i < length) {
+			int firstCodePoint = first.codePointAt(i);
+			int secondCodePoint = second.codePointAt(i);
+			if (firstCodePoint != secondCodePoint) {
+				return firstCodePoint < secondCodePoint ? -1 : 1;
+			}
+			i += Character.charCount(firstCodePoint);
+		}
+		return Integer.compare(first.length(), second.length());
+	}
+
+	private static boolean equals(String first, String second) {
+		return first == null ? second == null : first.equals(second);
+	}
+
+}
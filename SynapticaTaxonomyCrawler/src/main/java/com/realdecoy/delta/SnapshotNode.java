@@ -0,0 +1,77 @@
+package com.realdecoy.delta;
+
+/**
+ * One node of a taxonomy snapshot as read back by
+ * {@link TaxonomySnapshotReader}. The key is the Uid of a term's first
+ * occurrence and parent Uid>Uid for any further occurrence under another
+ * parent, the same keys the stable id store assigns ids by.
+ */
+public class SnapshotNode {
+
+	private String generatedUid;
+	private String key;
+	private String name;
+	private String parent;
+	private String parentUid;
+	private String uid;
+	private String uniquePath;
+
+	public String getGeneratedUid() {
+		return generatedUid;
+	}
+
+	public void setGeneratedUid(String generatedUid) {
+		this.generatedUid = generatedUid;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	// The generated id of the parent node, or the dimension name for a top-level node.
+	public String getParent() {
+		return parent;
+	}
+
+	public void setParent(String parent) {
+		this.parent = parent;
+	}
+
+	// Null for a top-level node.
+	public String getParentUid() {
+		return parentUid;
+	}
+
+	public void setParentUid(String parentUid) {
+		this.parentUid = parentUid;
+	}
+
+	public String getUid() {
+		return uid;
+	}
+
+	public void setUid(String uid) {
+		this.uid = uid;
+	}
+
+	public String getUniquePath() {
+		return uniquePath;
+	}
+
+	public void setUniquePath(String uniquePath) {
+		this.uniquePath = uniquePath;
+	}
+
+}
@@ -0,0 +1,206 @@
+package com.realdecoy.delta;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.realdecoy.model.TaxonomyItem;
+import com.realdecoy.parser.TaxonomyItemHandler;
+import com.realdecoy.util.OccurrenceKeys;
+import com.realdecoy.writer.UniquePath;
+
+/**
+ * Records the nodes of a taxonomy as they are visited, once they have their
+ * generated ids, and writes them out as a snapshot sorted by key that the next
+ * run's delta is worked out against.
+ *
+ * Records are encoded straight into one growing byte array, in the form they
+ * are written to the snapshot: a length prefixed UTF-8 field (length -1 for null)
+ * for the key, Uid, generated id, name, parent Uid, parent id and UNIQUE_PATH.
+ * The key is that of {@link OccurrenceKeys}, as in the id store, and is left
+ * null when it is the Uid. Terms without a key have no identity from one run
+ * to the next and are not recorded.
+ */
+public class TaxonomySnapshotBuilder implements TaxonomyItemHandler {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int dataLength = 0;
+	private final String dimensionName;
+	private final OccurrenceKeys occurrenceKeys = new OccurrenceKeys();
+	private byte[] recordData = new byte[INITIAL_CAPACITY * 64];
+	private int recordCount = 0;
+	// Start of each record in recordData, followed by the end of the last one.
+	private int[] recordStarts = new int[INITIAL_CAPACITY + 1];
+	private int skippedCount = 0;
+	private final UniquePath uniquePath = new UniquePath();
+
+	public TaxonomySnapshotBuilder(String dimensionName) {
+		this.dimensionName = dimensionName;
+	}
+
+	@Override
+	public void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) throws IOException {
+		uniquePath.enter(depth, taxonomyItem.getGeneratedUid());
+		String uid = taxonomyItem.getUid();
+		String parentUid = parent == null ? null : parent.getUid();
+		String key = occurrenceKeys.getKey(uid, parentUid, parent == null ? null : parent.getGeneratedUid());
+		occurrenceKeys.setId(uid, key, taxonomyItem.getGeneratedUid());
+		if (key == null) {
+			skippedCount++;
+			return;
+		}
+
+		if (recordCount + 1 == recordStarts.length) {
+			recordStarts = Arrays.copyOf(recordStarts, recordStarts.length + (recordStarts.length >> 1));
+		}
+		appendField(key.equals(uid) ? null : key);
+		appendField(uid);
+		appendField(taxonomyItem.getGeneratedUid());
+		appendField(taxonomyItem.getName());
+		appendField(parentUid);
+		appendField(parent == null ? dimensionName : parent.getGeneratedUid());
+		appendField(uniquePath);
+		recordStarts[++recordCount] = dataLength;
+	}
+
+	// Terms left out of the snapshot for want of a key.
+	public int getSkippedCount() {
+		return skippedCount;
+	}
+
+	// Writes the snapshot and returns the number of nodes in it. A key seen more than once, a term repeated under
+	// the same parent, is written for its first occurrence only.
+	public int write(File snapshotFile) throws IOException {
+		int[] order = sortRecords();
+		int nodeCount = 0;
+		for (int i = 0; i < order.length; i++) {
+			if (i == 0 || compareKeys(order[i - 1], order[i]) != 0) {
+				order[nodeCount++] = order[i];
+			}
+		}
+
+		DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotFile), BUFFER_SIZE));
+		try {
+			outputStream.writeInt(TaxonomySnapshotReader.MAGIC);
+			outputStream.writeInt(TaxonomySnapshotReader.VERSION);
+			outputStream.writeInt(nodeCount);
+			for (int i = 0; i < nodeCount; i++) {
+				int record = order[i];
+				outputStream.write(recordData, recordStarts[record], recordStarts[record + 1] - recordStarts[record]);
+			}
+		} finally {
+			outputStream.close();
+		}
+		return nodeCount;
+	}
+
+	// Encodes the value as UTF-8 straight into recordData, an unpaired surrogate is written as '?' as String.getBytes does.
+	private void appendField(CharSequence value) {
+		if (value == null) {
+			ensureCapacity(4);
+			putInt(dataLength, -1);
+			dataLength += 4;
+			return;
+		}
+
+		int length = value.length();
+		ensureCapacity(4 + length * 3);
+		int position = dataLength + 4;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				recordData[position++] = (byte) c;
+			} else if (c < 0x800) {
+				recordData[position++] = (byte) (0xC0 | (c >> 6));
+				recordData[position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				recordData[position++] = (byte) (0xF0 | (codePoint >> 18));
+				recordData[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				recordData[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				recordData[position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				recordData[position++] = '?';
+			} else {
+				recordData[position++] = (byte) (0xE0 | (c >> 12));
+				recordData[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				recordData[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		putInt(dataLength, position - dataLength - 4);
+		dataLength = position;
+	}
+
+	private void ensureCapacity(int additionalBytes) {
+		if (dataLength + additionalBytes > recordData.length) {
+			recordData = Arrays.copyOf(recordData, Math.max(recordData.length + (recordData.length >> 1), dataLength + additionalBytes));
+		}
+	}
+
+	// Orders record numbers by key as unsigned bytes, with a bottom up merge sort that keeps repeated keys in visit order.
+	private int[] sortRecords() {
+		int[] order = new int[recordCount];
+		for (int record = 0; record < recordCount; record++) {
+			order[record] = record;
+		}
+
+		int[] merged = new int[recordCount];
+		for (int width = 1; width < recordCount; width <<= 1) {
+			for (int low = 0; low < recordCount; low += width << 1) {
+				int middle = Math.min(low + width, recordCount);
+				int high = Math.min(low + (width << 1), recordCount);
+				int left = low;
+				int right = middle;
+				for (int i = low; i < high; i++) {
+					if (left < middle && (right == high || compareKeys(order[left], order[right]) <= 0)) {
+						merged[i] = order[left++];
+					} else {
+						merged[i] = order[right++];
+					}
+				}
+			}
+			int[] swap = order;
+			order = merged;
+			merged = swap;
+		}
+		return order;
+	}
+
+	private int compareKeys(int first, int second) {
+		int firstStart = getKeyStart(first);
+		int firstLength = getInt(firstStart);
+		int secondStart = getKeyStart(second);
+		int secondLength = getInt(secondStart);
+		int length = Math.min(firstLength, secondLength);
+		for (int i = 0; i < length; i++) {
+			int difference = (recordData[firstStart + 4 + i] & 0xFF) - (recordData[secondStart + 4 + i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return firstLength - secondLength;
+	}
+
+	// Position of the length prefixed key of a record, the Uid field when the key field is null.
+	private int getKeyStart(int record) {
+		int start = recordStarts[record];
+		return getInt(start) < 0 ? start + 4 : start;
+	}
+
+	private int getInt(int position) {
+		return (recordData[position] << 24) | ((recordData[position + 1] & 0xFF) << 16) | ((recordData[position + 2] & 0xFF) << 8) | (recordData[position + 3] & 0xFF);
+	}
+
+	private void putInt(int position, int value) {
+		recordData[position] = (byte) (value >>> 24);
+		recordData[position + 1] = (byte) (value >>> 16);
+		recordData[position + 2] = (byte) (value >>> 8);
+		recordData[position + 3] = (byte) value;
+	}
+
+}
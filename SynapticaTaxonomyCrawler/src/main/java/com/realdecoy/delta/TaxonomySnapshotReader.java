@@ -0,0 +1,83 @@
+package com.realdecoy.delta;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the nodes of a snapshot written by {@link TaxonomySnapshotBuilder} one
+ * at a time in key order, so two snapshots can be compared without holding
+ * either in memory. Header: magic, version and node count (ints), big-endian.
+ */
+public class TaxonomySnapshotReader implements Closeable {
+
+	static final int MAGIC = 0x534E4150;
+	static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final DataInputStream inputStream;
+	private final int nodeCount;
+	private int nodesRead = 0;
+
+	public TaxonomySnapshotReader(File snapshotFile) throws IOException {
+		inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), BUFFER_SIZE));
+		try {
+			if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+				throw new IOException("Not a taxonomy snapshot: " + snapshotFile.getName() + ".");
+			}
+			nodeCount = inputStream.readInt();
+		} catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	// Returns null once every node has been read.
+	public SnapshotNode next() throws IOException {
+		if (nodesRead == nodeCount) {
+			return null;
+		}
+
+		SnapshotNode node = new SnapshotNode();
+		try {
+			String key = readField();
+			node.setUid(readField());
+			node.setKey(key == null ? node.getUid() : key);
+			node.setGeneratedUid(readField());
+			node.setName(readField());
+			node.setParentUid(readField());
+			node.setParent(readField());
+			node.setUniquePath(readField());
+		} catch (EOFException e) {
+			throw new IOException("Taxonomy snapshot is truncated after " + nodesRead + " nodes.", e);
+		}
+		nodesRead++;
+		return node;
+	}
+
+	@Override
+	public void close() throws IOException {
+		inputStream.close();
+	}
+
+	private String readField() throws IOException {
+		int length = inputStream.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		inputStream.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+}
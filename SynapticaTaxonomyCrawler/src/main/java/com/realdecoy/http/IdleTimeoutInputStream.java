@@ -0,0 +1,91 @@
+package com.realdecoy.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes the wrapped response body when no bytes arrive for longer than the
+ * read timeout. HttpClient's own timeout stops once the headers are in, so
+ * without this a stalled body would block the parser forever.
+ */
+class IdleTimeoutInputStream extends FilterInputStream {
+
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "synaptica-read-timeout");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final ScheduledFuture<?> check;
+	private volatile long lastActivity = System.nanoTime();
+	private final long timeoutMillis;
+	private volatile boolean timedOut = false;
+
+	IdleTimeoutInputStream(InputStream inputStream, long timeoutMillis) {
+		super(inputStream);
+		this.timeoutMillis = timeoutMillis;
+
+		long period = Math.max(1, timeoutMillis / 4);
+		check = WATCHDOG.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if (!timedOut && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity) > IdleTimeoutInputStream.this.timeoutMillis) {
+					timedOut = true;
+					try {
+						in.close();
+					} catch (IOException e) {
+						// The reader sees the timeout either way.
+					}
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public int read() throws IOException {
+		try {
+			int read = super.read();
+			lastActivity = System.nanoTime();
+			return read;
+		} catch (IOException e) {
+			throw translate(e);
+		}
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		try {
+			int read = super.read(buffer, offset, length);
+			lastActivity = System.nanoTime();
+			return read;
+		} catch (IOException e) {
+			throw translate(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		check.cancel(false);
+		super.close();
+	}
+
+	private IOException translate(IOException e) {
+		if (timedOut) {
+			SocketTimeoutException timeout = new SocketTimeoutException("No data received for " + timeoutMillis + " ms.");
+			timeout.initCause(e);
+			return timeout;
+		}
+		return e;
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.realdecoy.http;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPInputStream;
+
+import com.realdecoy.metrics.CountingInputStream;
+
+/**
+ * Replays a recorded saved report from disk in place of a live request, for
+ * offline runs and load tests. Snapshots may be plain JSON or gzip
+ * compressed, which is recognised from the content rather than the name. The
+ * file's modification time stands in for Last-Modified, so conditional
+ * fetches skip a snapshot that has not been replaced.
+ */
+class SnapshotReader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int GZIP_MAGIC = 0x8B1F;
+
+	private SnapshotReader() {
+	}
+
+	static SynapticaResponse read(File snapshotFile, String lastModified) throws IOException {
+		if (!snapshotFile.isFile()) {
+			throw new FileNotFoundException("Snapshot not found: " + snapshotFile.getAbsolutePath() + ".");
+		}
+
+		String snapshotLastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(snapshotFile.lastModified()).atZone(ZoneOffset.UTC));
+		if (snapshotLastModified.equals(lastModified)) {
+			return new SynapticaResponse(null, true, null, lastModified);
+		}
+
+		boolean compressed = isGzip(snapshotFile);
+		CountingInputStream receivedStream = new CountingInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), BUFFER_SIZE));
+		InputStream inputStream = receivedStream;
+
+		if (compressed) {
+			try {
+				inputStream = new GZIPInputStream(receivedStream, BUFFER_SIZE);
+			} catch (IOException e) {
+				receivedStream.close();
+				throw e;
+			}
+		}
+
+		return new SynapticaResponse(inputStream, receivedStream, false, null, snapshotLastModified);
+	}
+
+	private static boolean isGzip(File snapshotFile) throws IOException {
+		InputStream inputStream = new FileInputStream(snapshotFile);
+		try {
+			int first = inputStream.read();
+			int second = inputStream.read();
+			return second != -1 && (first | (second << 8)) == GZIP_MAGIC;
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.realdecoy.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.realdecoy.metrics.CountingInputStream;
+
+/**
+ * Fetches saved reports from the Synaptica REST API. A single instance is
+ * shared by every dimension job so they all reuse one HTTP/2 capable client
+ * and its connection pool. Responses are requested compressed and decoded
+ * while they are read, and failed attempts are retried with jittered
+ * exponential backoff. file: URLs replay a recorded snapshot from disk
+ * instead.
+ */
+public class SynapticaClient {
+
+	private static final String ACCEPT_ENCODING = "gzip, deflate";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String CONNECT_TIMEOUT_PROPERTY = "crawler.http.connectTimeout";
+	private static final long DEFAULT_CONNECT_TIMEOUT = 30000;
+	private static final long DEFAULT_INITIAL_BACKOFF = 1000;
+	private static final int DEFAULT_MAX_ATTEMPTS = 4;
+	private static final long DEFAULT_MAX_BACKOFF = 30000;
+	private static final long DEFAULT_READ_TIMEOUT = 120000;
+	private static final String INITIAL_BACKOFF_PROPERTY = "crawler.http.initialBackoff";
+	private static final Logger LOGGER = Logger.getLogger(SynapticaClient.class.getName());
+	private static final String MAX_ATTEMPTS_PROPERTY = "crawler.http.maxAttempts";
+	private static final String MAX_BACKOFF_PROPERTY = "crawler.http.maxBackoff";
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	private static final String READ_TIMEOUT_PROPERTY = "crawler.http.readTimeout";
+
+	private final String authorizationHeader;
+	private final HttpClient httpClient;
+	private final long initialBackoff;
+	private final int maxAttempts;
+	private final long maxBackoff;
+	private final long readTimeout;
+
+	public SynapticaClient(String username, String password) {
+		String authenticationString = username + ":" + password;
+		String encodedAuthenticationString = Base64.getEncoder().encodeToString(authenticationString.getBytes(StandardCharsets.UTF_8));
+		authorizationHeader = "Basic " + encodedAuthenticationString;
+
+		initialBackoff = Long.getLong(INITIAL_BACKOFF_PROPERTY, DEFAULT_INITIAL_BACKOFF);
+		maxAttempts = Math.max(1, Integer.getInteger(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS));
+		maxBackoff = Long.getLong(MAX_BACKOFF_PROPERTY, DEFAULT_MAX_BACKOFF);
+		readTimeout = Long.getLong(READ_TIMEOUT_PROPERTY, DEFAULT_READ_TIMEOUT);
+
+		httpClient = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.connectTimeout(Duration.ofMillis(Long.getLong(CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT)))
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+	}
+
+	public InputStream openStream(String urlString) throws IOException {
+		return fetch(urlString, null, null).getInputStream();
+	}
+
+	// Sends a conditional request when validators from a previous response are supplied.
+	public SynapticaResponse fetch(String urlString, String entityTag, String lastModified) throws IOException {
+		URI uri = toUri(urlString);
+
+		// Recorded snapshots are replayed from disk, file:snapshot.json.gz as well as file:///path/snapshot.json.
+		if ("file".equalsIgnoreCase(uri.getScheme())) {
+			return SnapshotReader.read(uri.isOpaque() ? new File(uri.getSchemeSpecificPart()) : new File(uri), lastModified);
+		}
+
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+				.timeout(Duration.ofMillis(readTimeout))
+				.header("Authorization", authorizationHeader)
+				.header("Accept-Encoding", ACCEPT_ENCODING)
+				.GET();
+
+		if (entityTag != null) {
+			builder.header("If-None-Match", entityTag);
+		}
+		if (lastModified != null) {
+			builder.header("If-Modified-Since", lastModified);
+		}
+
+		HttpRequest request = builder.build();
+
+		for (int attempt = 1;; attempt++) {
+			IOException failure;
+			boolean retryable = true;
+
+			try {
+				HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+				int status = response.statusCode();
+
+				if (status == HTTP_NOT_MODIFIED) {
+					response.body().close();
+					return new SynapticaResponse(null, true, entityTag, lastModified);
+				}
+
+				if (status >= 200 && status < 300) {
+					String responseEntityTag = response.headers().firstValue("ETag").orElse(null);
+					String responseLastModified = response.headers().firstValue("Last-Modified").orElse(null);
+					CountingInputStream receivedStream = new CountingInputStream(new IdleTimeoutInputStream(response.body(), readTimeout));
+					return new SynapticaResponse(decode(receivedStream, response), receivedStream, false, responseEntityTag, responseLastModified);
+				}
+
+				response.body().close();
+				failure = new IOException("Unexpected response status: " + status + ". URL: " + urlString + ".");
+				// Client errors will not go away by asking again.
+				retryable = status >= 500 || status == HTTP_TOO_MANY_REQUESTS;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted whilst retrieving: " + urlString + ".");
+			} catch (IOException e) {
+				failure = e;
+			}
+
+			if (!retryable || attempt >= maxAttempts) {
+				throw failure;
+			}
+
+			long backoff = getBackoff(attempt);
+			LOGGER.log(Level.WARNING, "Attempt " + attempt + " of " + maxAttempts + " failed. Retrying in " + backoff + " ms. URL: " + urlString + ".", failure);
+			sleep(backoff);
+		}
+	}
+
+	private InputStream decode(InputStream inputStream, HttpResponse<InputStream> response) throws IOException {
+		String contentEncoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+
+		try {
+			if ("gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)) {
+				return new GZIPInputStream(inputStream, BUFFER_SIZE);
+			}
+			if ("deflate".equalsIgnoreCase(contentEncoding)) {
+				return new InflaterInputStream(inputStream);
+			}
+		} catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+
+		return inputStream;
+	}
+
+	// Exponential backoff with equal jitter, so concurrent jobs retrying the same server spread out.
+	private long getBackoff(int attempt) {
+		long backoff = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 20));
+		long half = backoff / 2;
+		return half + ThreadLocalRandom.current().nextLong(half + 1);
+	}
+
+	private void sleep(long millis) throws IOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted whilst waiting to retry.");
+		}
+	}
+
+	private URI toUri(String urlString) throws IOException {
+		try {
+			return URI.create(urlString);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid URL: " + urlString + ".", e);
+		}
+	}
+
+}
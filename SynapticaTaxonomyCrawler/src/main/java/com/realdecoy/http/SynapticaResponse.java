@@ -0,0 +1,50 @@
+package com.realdecoy.http;
+
+import java.io.InputStream;
+
+import com.realdecoy.metrics.CountingInputStream;
+
+public class SynapticaResponse {
+
+	private final String entityTag;
+	private final InputStream inputStream;
+	private final String lastModified;
+	private final boolean notModified;
+	private final CountingInputStream receivedStream;
+
+	public SynapticaResponse(InputStream inputStream, boolean notModified, String entityTag, String lastModified) {
+		this(inputStream, null, notModified, entityTag, lastModified);
+	}
+
+	// receivedStream counts the body as it arrives, before it is decompressed into inputStream.
+	public SynapticaResponse(InputStream inputStream, CountingInputStream receivedStream, boolean notModified, String entityTag, String lastModified) {
+		this.inputStream = inputStream;
+		this.receivedStream = receivedStream;
+		this.notModified = notModified;
+		this.entityTag = entityTag;
+		this.lastModified = lastModified;
+	}
+
+	// Bytes of the body read off the wire so far.
+	public long getBytesReceived() {
+		return receivedStream == null ? 0 : receivedStream.getCount();
+	}
+
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	// Null when the report was not modified.
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public boolean isNotModified() {
+		return notModified;
+	}
+
+}
@@ -0,0 +1,155 @@
+package com.realdecoy.index;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks nodes of a dimension file up by Synaptica Uid or generated id through
+ * the sidecar index written next to it, so a single term can be read without
+ * parsing the whole file. The index is memory-mapped and searched in place.
+ *
+ * The index is a header followed by fixed size entries sorted by kind, key and
+ * node offset, then the UTF-8 keys in entry order. Header: magic, version,
+ * entry count, key bytes (ints) and the length of the dimension file it was
+ * written for (long). Entry: node offset (long), node length, key offset, key
+ * length and kind (ints). Everything is big-endian.
+ */
+public class DimensionIndex implements Closeable {
+
+	public static final String INDEX_FILE_SUFFIX = ".idx";
+	static final int ENTRY_BYTES = 24;
+	static final int HEADER_BYTES = 24;
+	static final int KIND_GENERATED_UID = 1;
+	static final int KIND_UID = 0;
+	static final int MAGIC = 0x44494458;
+	static final int VERSION = 1;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final FileChannel dimensionChannel;
+	private final int entryCount;
+	private final MappedByteBuffer index;
+	private final int keysStart;
+
+	// Fails when the index is missing or was not written for the dimension file as it is now.
+	public DimensionIndex(File dimensionFile) throws IOException {
+		File indexFile = getIndexFile(dimensionFile);
+		FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+		try {
+			if (indexChannel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Dimension index is too large to map: " + indexFile.getName() + ".");
+			}
+			index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+		} finally {
+			indexChannel.close();
+		}
+
+		if (index.capacity() < HEADER_BYTES || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+			throw new IOException("Not a dimension index: " + indexFile.getName() + ".");
+		}
+		entryCount = index.getInt(8);
+		long keysEnd = HEADER_BYTES + (long) entryCount * ENTRY_BYTES + index.getInt(12);
+		if (entryCount < 0 || keysEnd != index.capacity()) {
+			throw new IOException("Dimension index is truncated: " + indexFile.getName() + ".");
+		}
+		keysStart = HEADER_BYTES + entryCount * ENTRY_BYTES;
+
+		dimensionChannel = FileChannel.open(dimensionFile.toPath(), StandardOpenOption.READ);
+		if (dimensionChannel.size() != index.getLong(16)) {
+			dimensionChannel.close();
+			throw new IOException("Dimension index is out of date: " + indexFile.getName() + ".");
+		}
+	}
+
+	public static File getIndexFile(File dimensionFile) {
+		return new File(dimensionFile.getPath().concat(INDEX_FILE_SUFFIX));
+	}
+
+	// A term under several parents has a node for each, in file order.
+	public List<NodeLocation> findByUid(String uid) {
+		return find(KIND_UID, uid);
+	}
+
+	// Null when no node has the id.
+	public NodeLocation findByGeneratedUid(String generatedUid) {
+		List<NodeLocation> locations = find(KIND_GENERATED_UID, generatedUid);
+		return locations.isEmpty() ? null : locations.get(0);
+	}
+
+	// Returns the node element as it appears in the dimension file.
+	public String readNode(NodeLocation location) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(location.getLength());
+		long position = location.getOffset();
+		while (buffer.hasRemaining()) {
+			int read = dimensionChannel.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException("Dimension file ends before node at " + location + ".");
+			}
+			position += read;
+		}
+		return new String(buffer.array(), UTF_8);
+	}
+
+	public int size() {
+		return entryCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		dimensionChannel.close();
+	}
+
+	private List<NodeLocation> find(int kind, String key) {
+		ArrayList<NodeLocation> locations = new ArrayList<>(1);
+		if (key == null) {
+			return locations;
+		}
+		byte[] bytes = key.getBytes(UTF_8);
+
+		// Lower bound, the first entry not ordered before the key.
+		int low = 0;
+		int high = entryCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(middle, kind, bytes) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		for (int entry = low; entry < entryCount && compare(entry, kind, bytes) == 0; entry++) {
+			int position = HEADER_BYTES + entry * ENTRY_BYTES;
+			locations.add(new NodeLocation(index.getLong(position), index.getInt(position + 8)));
+		}
+		return locations;
+	}
+
+	private int compare(int entry, int kind, byte[] key) {
+		int position = HEADER_BYTES + entry * ENTRY_BYTES;
+		int entryKind = index.getInt(position + 20);
+		if (entryKind != kind) {
+			return entryKind < kind ? -1 : 1;
+		}
+
+		int keyOffset = keysStart + index.getInt(position + 12);
+		int keyLength = index.getInt(position + 16);
+		int length = Math.min(keyLength, key.length);
+		for (int i = 0; i < length; i++) {
+			int difference = (index.get(keyOffset + i) & 0xFF) - (key[i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return keyLength - key.length;
+	}
+
+}
@@ -0,0 +1,210 @@
+package com.realdecoy.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Collects the location of each node as the dimension file is written and
+ * writes them out as the sorted index read by {@link DimensionIndex}. Keys are
+ * kept as UTF-8 in one growing byte array, so the index costs a few dozen
+ * bytes per node until it is written.
+ */
+public class DimensionIndexWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private int entryCount = 0;
+	private byte[] entryKinds = new byte[INITIAL_CAPACITY];
+	private int[] entryNodes = new int[INITIAL_CAPACITY];
+	private byte[] keyData = new byte[INITIAL_CAPACITY * 8];
+	// Start of each entry's key in keyData, followed by the end of the last one.
+	private int[] keyStarts = new int[INITIAL_CAPACITY + 1];
+	private int nodeCount = 0;
+	private int[] nodeLengths = new int[INITIAL_CAPACITY];
+	private long[] nodeOffsets = new long[INITIAL_CAPACITY];
+
+	public void addNode(String uid, String generatedUid, long offset, int length) {
+		int node = addNode(offset, length);
+		if (uid != null) {
+			addKey(DimensionIndex.KIND_UID, node, uid.getBytes(UTF_8), 0, -1);
+		}
+		if (generatedUid != null) {
+			addKey(DimensionIndex.KIND_GENERATED_UID, node, generatedUid.getBytes(UTF_8), 0, -1);
+		}
+	}
+
+	// Adds the nodes of a fragment that was appended to the dimension file at baseOffset.
+	public void addFragment(DimensionIndexWriter fragment, long baseOffset) {
+		int firstNode = nodeCount;
+		for (int node = 0; node < fragment.nodeCount; node++) {
+			addNode(baseOffset + fragment.nodeOffsets[node], fragment.nodeLengths[node]);
+		}
+		for (int entry = 0; entry < fragment.entryCount; entry++) {
+			addKey(fragment.entryKinds[entry], firstNode + fragment.entryNodes[entry], fragment.keyData, fragment.keyStarts[entry], fragment.keyStarts[entry + 1] - fragment.keyStarts[entry]);
+		}
+	}
+
+	// Writes the index for a dimension file of the given length, replacing any previous index in one step.
+	public void write(File indexFile, long dimensionLength) throws IOException {
+		int[] order = sortEntries();
+
+		File temporaryFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+		try {
+			FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+				buffer.putInt(DimensionIndex.MAGIC);
+				buffer.putInt(DimensionIndex.VERSION);
+				buffer.putInt(entryCount);
+				buffer.putInt(keyStarts[entryCount]);
+				buffer.putLong(dimensionLength);
+
+				int keyOffset = 0;
+				for (int entry : order) {
+					if (buffer.remaining() < DimensionIndex.ENTRY_BYTES) {
+						writeFully(channel, buffer);
+					}
+					int node = entryNodes[entry];
+					int keyLength = keyStarts[entry + 1] - keyStarts[entry];
+					buffer.putLong(nodeOffsets[node]);
+					buffer.putInt(nodeLengths[node]);
+					buffer.putInt(keyOffset);
+					buffer.putInt(keyLength);
+					buffer.putInt(entryKinds[entry]);
+					keyOffset += keyLength;
+				}
+				for (int entry : order) {
+					int keyLength = keyStarts[entry + 1] - keyStarts[entry];
+					if (buffer.remaining() < keyLength) {
+						writeFully(channel, buffer);
+					}
+					if (keyLength > buffer.capacity()) {
+						ByteBuffer key = ByteBuffer.wrap(keyData, keyStarts[entry], keyLength);
+						while (key.hasRemaining()) {
+							channel.write(key);
+						}
+					} else {
+						buffer.put(keyData, keyStarts[entry], keyLength);
+					}
+				}
+				writeFully(channel, buffer);
+			} finally {
+				channel.close();
+			}
+			Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temporaryFile.delete();
+		}
+	}
+
+	private int addNode(long offset, int length) {
+		if (nodeCount == nodeOffsets.length) {
+			int capacity = nodeCount + (nodeCount >> 1);
+			nodeOffsets = Arrays.copyOf(nodeOffsets, capacity);
+			nodeLengths = Arrays.copyOf(nodeLengths, capacity);
+		}
+		nodeOffsets[nodeCount] = offset;
+		nodeLengths[nodeCount] = length;
+		return nodeCount++;
+	}
+
+	// A length of -1 takes the whole array.
+	private void addKey(int kind, int node, byte[] bytes, int offset, int length) {
+		if (length < 0) {
+			length = bytes.length;
+		}
+		if (entryCount == entryNodes.length) {
+			int capacity = entryCount + (entryCount >> 1);
+			entryNodes = Arrays.copyOf(entryNodes, capacity);
+			entryKinds = Arrays.copyOf(entryKinds, capacity);
+			keyStarts = Arrays.copyOf(keyStarts, capacity + 1);
+		}
+		int start = keyStarts[entryCount];
+		if (start + length > keyData.length) {
+			keyData = Arrays.copyOf(keyData, Math.max(keyData.length + (keyData.length >> 1), start + length));
+		}
+
+		System.arraycopy(bytes, offset, keyData, start, length);
+		entryNodes[entryCount] = node;
+		entryKinds[entryCount] = (byte) kind;
+		keyStarts[++entryCount] = start + length;
+	}
+
+	// Orders entry numbers by kind, key as unsigned bytes, then position in the file, with a bottom up merge
+	// sort over ints. The kind and first key bytes are packed into a long so most comparisons stop there.
+	private int[] sortEntries() {
+		long[] prefixes = new long[entryCount];
+		int[] order = new int[entryCount];
+		for (int entry = 0; entry < entryCount; entry++) {
+			long prefix = entryKinds[entry];
+			for (int i = 0; i < 7; i++) {
+				int position = keyStarts[entry] + i;
+				prefix = (prefix << 8) | (position < keyStarts[entry + 1] ? keyData[position] & 0xFF : 0);
+			}
+			prefixes[entry] = prefix;
+			order[entry] = entry;
+		}
+
+		int[] merged = new int[entryCount];
+		for (int width = 1; width < entryCount; width <<= 1) {
+			for (int low = 0; low < entryCount; low += width << 1) {
+				int middle = Math.min(low + width, entryCount);
+				int high = Math.min(low + (width << 1), entryCount);
+				int left = low;
+				int right = middle;
+				for (int i = low; i < high; i++) {
+					if (left < middle && (right == high || compareEntries(prefixes, order[left], order[right]) <= 0)) {
+						merged[i] = order[left++];
+					} else {
+						merged[i] = order[right++];
+					}
+				}
+			}
+			int[] swap = order;
+			order = merged;
+			merged = swap;
+		}
+		return order;
+	}
+
+	private int compareEntries(long[] prefixes, int first, int second) {
+		if (prefixes[first] != prefixes[second]) {
+			return prefixes[first] < prefixes[second] ? -1 : 1;
+		}
+
+		int firstStart = keyStarts[first];
+		int firstLength = keyStarts[first + 1] - firstStart;
+		int secondStart = keyStarts[second];
+		int secondLength = keyStarts[second + 1] - secondStart;
+		int length = Math.min(firstLength, secondLength);
+		for (int i = 7; i < length; i++) {
+			int difference = (keyData[firstStart + i] & 0xFF) - (keyData[secondStart + i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		if (firstLength != secondLength) {
+			return firstLength - secondLength;
+		}
+		return Long.compare(nodeOffsets[entryNodes[first]], nodeOffsets[entryNodes[second]]);
+	}
+
+	// Writes out everything put in the buffer and leaves it empty.
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
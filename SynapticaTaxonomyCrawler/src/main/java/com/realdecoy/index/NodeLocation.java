@@ -0,0 +1,30 @@
+package com.realdecoy.index;
+
+/**
+ * Where a node element sits in a dimension file, from the start of its
+ * opening tag to the end of its closing tag, in bytes.
+ */
+public class NodeLocation {
+
+	private final int length;
+	private final long offset;
+
+	public NodeLocation(long offset, int length) {
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	@Override
+	public String toString() {
+		return offset + "+" + length;
+	}
+
+}
@@ -0,0 +1,318 @@
+package com.realdecoy.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.realdecoy.http.SynapticaClient;
+import com.realdecoy.metrics.CrawlMetrics;
+import com.realdecoy.model.DimensionJob;
+import com.realdecoy.model.JobResult;
+import com.realdecoy.util.ExecutorUtils;
+import com.realdecoy.util.TimeUtils;
+
+/**
+ * Keeps the crawler running and crawls every dimension of a job config on its
+ * own schedule. A run that is still in progress when the next one falls due is
+ * skipped, and the job config is reloaded whenever the file changes. The
+ * outcome of each job is kept in a status file in the output folder instead of
+ * an exit code.
+ */
+public class CrawlerDaemon {
+
+	private static final String DEFAULT_SCHEDULE = "1h";
+	private static final String DEFAULT_SCHEDULE_PROPERTY = "crawler.daemon.defaultSchedule";
+	private static final long DEFAULT_RELOAD_INTERVAL = 10000;
+	private static final long DEFAULT_SHUTDOWN_GRACE = 300000;
+	private static final Logger LOGGER = Logger.getLogger(CrawlerDaemon.class.getName());
+	private static final String RELOAD_INTERVAL_PROPERTY = "crawler.daemon.reloadInterval";
+	private static final String SHUTDOWN_GRACE_PROPERTY = "crawler.daemon.shutdownGrace";
+	private static final String STATUS_FILE_NAME = "crawler-daemon-status.json";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final SynapticaClient client;
+	private long configLastModified;
+	private final String jobConfigPath;
+	private final String outputFolderPath;
+	private final Map<String, ScheduledJob> scheduledJobs = new LinkedHashMap<>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			return new Thread(runnable, "crawler-daemon-scheduler");
+		}
+	});
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private final ExecutorService workers;
+
+	public CrawlerDaemon(SynapticaClient client, String jobConfigPath, String outputFolderPath) {
+		this.client = client;
+		this.jobConfigPath = jobConfigPath;
+		this.outputFolderPath = outputFolderPath;
+		int maxConcurrentJobs = Integer.getInteger(Driver.MAX_CONCURRENT_JOBS_PROPERTY, Driver.DEFAULT_MAX_CONCURRENT_JOBS);
+		this.workers = ExecutorUtils.newBoundedExecutor(Math.max(1, maxConcurrentJobs), "dimension-crawler");
+	}
+
+	// Schedules the jobs and blocks until the JVM is asked to shut down.
+	public void run(List<DimensionJob> jobs) throws InterruptedException {
+		configLastModified = new File(jobConfigPath).lastModified();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				stop();
+			}
+		}, "crawler-daemon-shutdown"));
+
+		synchronized (scheduledJobs) {
+			schedule(jobs);
+		}
+
+		long reloadInterval = Long.getLong(RELOAD_INTERVAL_PROPERTY, DEFAULT_RELOAD_INTERVAL);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				reloadIfChanged();
+			}
+		}, reloadInterval, reloadInterval, TimeUnit.MILLISECONDS);
+
+		LOGGER.info("Synaptica Taxonomy Crawler daemon started with " + jobs.size() + " dimension(s).");
+		stopped.await();
+	}
+
+	private void stop() {
+		LOGGER.info("Stopping Synaptica Taxonomy Crawler daemon.");
+		scheduler.shutdownNow();
+		workers.shutdown();
+
+		try {
+			long grace = Long.getLong(SHUTDOWN_GRACE_PROPERTY, DEFAULT_SHUTDOWN_GRACE);
+			if (!workers.awaitTermination(grace, TimeUnit.MILLISECONDS)) {
+				LOGGER.warning("Dimension crawls still running after " + grace + " ms, abandoning them.");
+				workers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+		writeStatus();
+		LOGGER.info("Synaptica Taxonomy Crawler daemon stopped.");
+		stopped.countDown();
+	}
+
+	// Called with scheduledJobs held.
+	private void schedule(List<DimensionJob> jobs) {
+		Map<String, ScheduledJob> previousJobs = new LinkedHashMap<>(scheduledJobs);
+		scheduledJobs.clear();
+
+		for (DimensionJob job : jobs) {
+			ScheduledJob previous = previousJobs.remove(job.getFileName());
+
+			if (previous != null && previous.isSameJob(job)) {
+				scheduledJobs.put(job.getFileName(), previous);
+				continue;
+			}
+
+			ScheduledJob scheduledJob;
+			if (previous == null) {
+				scheduledJob = new ScheduledJob(job, new AtomicBoolean(), new JobResult());
+			} else {
+				// Keep the running flag so a crawl of the old definition still blocks an overlapping one.
+				previous.future.cancel(false);
+				scheduledJob = new ScheduledJob(job, previous.running, previous.result);
+				LOGGER.info("Rescheduling dimension: " + job.getDimensionName() + " (" + job.getFileName() + ").");
+			}
+			scheduledJob.start();
+			scheduledJobs.put(job.getFileName(), scheduledJob);
+		}
+
+		for (ScheduledJob removed : previousJobs.values()) {
+			removed.future.cancel(false);
+			LOGGER.info("Dimension: " + removed.job.getDimensionName() + " (" + removed.job.getFileName() + ") removed from the schedule.");
+		}
+	}
+
+	private void reloadIfChanged() {
+		long lastModified = new File(jobConfigPath).lastModified();
+		if (lastModified == configLastModified) {
+			return;
+		}
+		configLastModified = lastModified;
+
+		try {
+			ArrayList<DimensionJob> jobs = JobConfigReader.read(jobConfigPath);
+			synchronized (scheduledJobs) {
+				schedule(jobs);
+			}
+			LOGGER.info("Reloaded job config: " + jobConfigPath + " with " + jobs.size() + " dimension(s).");
+			writeStatus();
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Failed to reload job config: " + jobConfigPath + ", keeping the current schedule.", e);
+		}
+	}
+
+	private void crawl(ScheduledJob scheduledJob) {
+		DimensionJob job = scheduledJob.job;
+		JobResult result = scheduledJob.result;
+		DimensionCrawler crawler = new DimensionCrawler(client, job, outputFolderPath);
+		long startTime = System.currentTimeMillis();
+		String status;
+
+		try {
+			crawler.call();
+			CrawlMetrics metrics = crawler.getMetrics();
+			status = metrics.getStatus().name().toLowerCase(Locale.ROOT);
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.SEVERE, "Dimension: " + job.getDimensionName() + " (" + job.getFileName() + ") failed.", e);
+			status = CrawlMetrics.Status.FAILED.name().toLowerCase(Locale.ROOT);
+		} finally {
+			scheduledJob.running.set(false);
+		}
+
+		long endTime = System.currentTimeMillis();
+		synchronized (result) {
+			result.setRuns(result.getRuns() + 1);
+			result.setLastStatus(status);
+			result.setLastDurationMillis(endTime - startTime);
+			result.setLastFinishTime(formatTime(endTime));
+			if (CrawlMetrics.Status.FAILED.name().equalsIgnoreCase(status)) {
+				result.setFailures(result.getFailures() + 1);
+				result.setConsecutiveFailures(result.getConsecutiveFailures() + 1);
+			} else {
+				result.setConsecutiveFailures(0);
+			}
+		}
+
+		LOGGER.info("Dimension: " + job.getDimensionName() + " (" + job.getFileName() + ") " + status + ". Runs: " + result.getRuns() + ", failures: " + result.getFailures() + ", skipped: " + result.getSkippedRuns() + ".");
+		writeStatus();
+	}
+
+	private void writeStatus() {
+		ArrayList<JobResult> results = new ArrayList<>();
+
+		synchronized (scheduledJobs) {
+			for (ScheduledJob scheduledJob : scheduledJobs.values()) {
+				JobResult result = scheduledJob.result;
+				synchronized (result) {
+					result.setDimensionName(scheduledJob.job.getDimensionName());
+					result.setFileName(scheduledJob.job.getFileName());
+					result.setSchedule(scheduledJob.schedule);
+					results.add(result);
+				}
+			}
+		}
+
+		File directory = new File(outputFolderPath).getAbsoluteFile();
+		File statusFile = new File(directory, STATUS_FILE_NAME);
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+		synchronized (this) {
+			File temporaryFile = null;
+			try {
+				temporaryFile = File.createTempFile(STATUS_FILE_NAME, ".tmp", directory);
+				Writer writer = new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8);
+				try {
+					gson.toJson(results, writer);
+				} finally {
+					writer.close();
+				}
+				Files.move(temporaryFile.toPath(), statusFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to write daemon status: " + statusFile.getPath() + ".", e);
+			} finally {
+				if (temporaryFile != null) {
+					temporaryFile.delete();
+				}
+			}
+		}
+	}
+
+	private static String formatTime(long millis) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ROOT);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(new Date(millis));
+	}
+
+	private class ScheduledJob {
+
+		private ScheduledFuture<?> future;
+		private final DimensionJob job;
+		private final JobResult result;
+		private final AtomicBoolean running;
+		private final String schedule;
+
+		ScheduledJob(DimensionJob job, AtomicBoolean running, JobResult result) {
+			this.job = job;
+			this.running = running;
+			this.result = result;
+			this.schedule = job.getSchedule() != null ? job.getSchedule() : System.getProperty(DEFAULT_SCHEDULE_PROPERTY, DEFAULT_SCHEDULE);
+		}
+
+		boolean isSameJob(DimensionJob other) {
+			return Objects.equals(job.getUrl(), other.getUrl()) && Objects.equals(job.getDimensionName(), other.getDimensionName()) && Objects.equals(job.getSchedule(), other.getSchedule());
+		}
+
+		void start() {
+			Duration period = TimeUtils.parseDuration(schedule);
+			LOGGER.info("Scheduling dimension: " + job.getDimensionName() + " (" + job.getFileName() + ") every " + TimeUtils.formatElapsedTime(period.toMillis()) + ".");
+
+			future = scheduler.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					trigger();
+				}
+			}, 0, period.toMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		private void trigger() {
+			if (!running.compareAndSet(false, true)) {
+				synchronized (result) {
+					result.setSkippedRuns(result.getSkippedRuns() + 1);
+				}
+				LOGGER.warning("Dimension: " + job.getDimensionName() + " (" + job.getFileName() + ") is still running, skipping this run.");
+				return;
+			}
+
+			try {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						crawl(ScheduledJob.this);
+					}
+				});
+			} catch (RuntimeException e) {
+				// Rejected because the daemon is shutting down.
+				running.set(false);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,745 @@
+package com.realdecoy.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.realdecoy.archive.DimensionArchive;
+import com.realdecoy.cache.CacheEntry;
+import com.realdecoy.cache.FetchCache;
+import com.realdecoy.delta.DimensionDeltaWriter;
+import com.realdecoy.delta.TaxonomySnapshotBuilder;
+import com.realdecoy.http.SynapticaClient;
+import com.realdecoy.http.SynapticaResponse;
+import com.realdecoy.index.DimensionIndex;
+import com.realdecoy.metrics.CountingInputStream;
+import com.realdecoy.metrics.CrawlMetrics;
+import com.realdecoy.metrics.CrawlMetrics.Stage;
+import com.realdecoy.metrics.CrawlMetrics.Status;
+import com.realdecoy.metrics.RunReportWriter;
+import com.realdecoy.metrics.TimedTaxonomyItemHandler;
+import com.realdecoy.model.CompactTaxonomy;
+import com.realdecoy.model.DimensionJob;
+import com.realdecoy.model.TaxonomyItem;
+import com.realdecoy.parser.CompactTaxonomyBuilder;
+import com.realdecoy.parser.TaxonomyItemHandler;
+import com.realdecoy.parser.TaxonomyItemTypeAdapter;
+import com.realdecoy.parser.TaxonomyStreamParser;
+import com.realdecoy.parser.TaxonomyTreeWalker;
+import com.realdecoy.util.IdUtil;
+import com.realdecoy.util.StableIdStore;
+import com.realdecoy.util.TimeUtils;
+import com.realdecoy.writer.DimensionWriter;
+import com.realdecoy.writer.DomDimensionWriter;
+import com.realdecoy.writer.ParallelTaxonomyTransformer;
+import com.realdecoy.writer.ShardedTaxonomyTransformer;
+import com.realdecoy.writer.StaxDimensionWriter;
+import com.realdecoy.writer.TaxonomyItemWriter;
+
+/**
+ * Runs the retrieve, write and archive pipeline for a single dimension. Each
+ * instance keeps its own id sequence and archive so several dimensions can be
+ * crawled at the same time.
+ */
+public class DimensionCrawler implements Callable<Boolean> {
+
+	private static final String CACHE_PROPERTY = "crawler.cache";
+	private static final String DELTA_PROPERTY = "crawler.delta";
+	private static final String ID_STORE_FOLDER = ".crawler-ids";
+	private static final String INDENT_PROPERTY = "crawler.indent";
+	private static final String INDEX_PROPERTY = "crawler.index";
+	private static final String INGESTION_MODE_COMPACT = "compact";
+	private static final String INGESTION_MODE_PROPERTY = "crawler.ingestion";
+	private static final String INGESTION_MODE_STREAM = "stream";
+	private static final Logger LOGGER = Logger.getLogger(DimensionCrawler.class.getName());
+	private static final int MAX_ARCHIVE_FILES = 5;
+	private static final String METRICS_REPORT_PROPERTY = "crawler.metrics.report";
+	private static final String PROMETHEUS_PROPERTY = "crawler.metrics.prometheus";
+	private static final String STABLE_IDS_PROPERTY = "crawler.stableIds";
+	private static final String SHARD_DIRECTORY_SUFFIX = ".shards";
+	private static final String SHARD_SIZE_PROPERTY = "crawler.shardSize";
+	private static final String SHARDS_PROPERTY = "crawler.shards";
+	private static final String SNAPSHOT_FOLDER = ".crawler-snapshots";
+	private static final String SNAPSHOT_SUFFIX = ".snapshot";
+	private static final String TRANSFORM_MODE_PARALLEL = "parallel";
+	private static final String TRANSFORM_MODE_PROPERTY = "crawler.transform";
+	private static final String WRITER_MODE_DOM = "dom";
+	private static final String WRITER_MODE_PROPERTY = "crawler.writer";
+
+	private final SynapticaClient client;
+	private final DimensionJob job;
+	private CrawlMetrics metrics;
+	private final String outputFolderPath;
+
+	public DimensionCrawler(SynapticaClient client, DimensionJob job, String outputFolderPath) {
+		this.client = client;
+		this.job = job;
+		this.outputFolderPath = outputFolderPath;
+	}
+
+	// Returns true when the dimension file is up to date, either rewritten or confirmed unchanged.
+	@Override
+	public Boolean call() {
+		LOGGER.info(message("Initiating crawl of dimension: " + job.getDimensionName() + "."));
+		long startTime = System.currentTimeMillis();
+		metrics = new CrawlMetrics();
+
+		Status status = crawl(job.getUrl(), job.getFileName(), job.getDimensionName());
+		metrics.finish(status);
+
+		long endTime = System.currentTimeMillis();
+		LOGGER.info(message("Crawl of dimension: " + job.getDimensionName() + " complete."));
+		TimeUtils.displayElapsedTime(startTime, endTime, LOGGER);
+		LOGGER.info(message(formatStageTimes()));
+		writeRunReport();
+		return status != Status.FAILED;
+	}
+
+	// Metrics of the last call, null before the first.
+	public CrawlMetrics getMetrics() {
+		return metrics;
+	}
+
+	public DimensionJob getJob() {
+		return job;
+	}
+
+	private Status crawl(String url, String fileName, String dimensionName) {
+		FetchCache cache = null;
+		CacheEntry cacheEntry = null;
+		File spoolFile = null;
+
+		if (!"false".equals(System.getProperty(CACHE_PROPERTY))) {
+			try {
+				cache = new FetchCache(outputFolderPath);
+				cacheEntry = new CacheEntry();
+				cacheEntry.setOutputSettings(getOutputSettings(dimensionName));
+				LOGGER.info(message("Checking taxonomy data for changes."));
+				spoolFile = fetchChangedReport(cache, url, fileName, cacheEntry);
+			} catch (IOException e) {
+				LOGGER.log(Level.SEVERE, message("Error occured whilst retrieving taxonomy data. URL: " + url + "."), e);
+				return Status.FAILED;
+			}
+
+			if (spoolFile == null) {
+				LOGGER.info(message("Taxonomy data unchanged since the last run, skipping."));
+				return Status.UNCHANGED;
+			}
+		}
+
+		try {
+			boolean success = processTaxonomyData(url, fileName, dimensionName, spoolFile);
+
+			if (success && cache != null) {
+				try {
+					cache.put(url, fileName, cacheEntry);
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, message("Failed to update fetch cache."), e);
+				}
+			}
+			return success ? Status.UPDATED : Status.FAILED;
+		} finally {
+			if (spoolFile != null && !spoolFile.delete()) {
+				LOGGER.warning(message("Failed to delete spool file: " + spoolFile.getName() + "."));
+			}
+		}
+	}
+
+	// Reads the taxonomy from the spool file when one is given, otherwise straight from Synaptica.
+	private boolean processTaxonomyData(String url, String fileName, String dimensionName, File spoolFile) {
+		boolean streaming = INGESTION_MODE_STREAM.equals(System.getProperty(INGESTION_MODE_PROPERTY));
+		ArrayList<TaxonomyItem> taxonomyItems = null;
+		CompactTaxonomy compactTaxonomy = null;
+
+		if (isShardingRequested() && !isShardedOutput()) {
+			LOGGER.warning(message("Sharded output needs a parsed taxonomy and the StAX writer, writing a single file."));
+		}
+		if (isDeltaRequested() && !isDeltaOutput()) {
+			LOGGER.warning(message("Delta output needs stable ids to match nodes between runs, writing the full file only."));
+		}
+
+		if (streaming) {
+			LOGGER.info(message("Taxonomy data will be streamed into the new dimension file."));
+		} else if (INGESTION_MODE_COMPACT.equals(System.getProperty(INGESTION_MODE_PROPERTY))) {
+			LOGGER.info(message("Retrieving taxonomy data into a compact taxonomy."));
+			compactTaxonomy = getCompactTaxonomyData(url, spoolFile);
+			LOGGER.info(message("Taxonomy data retrieval complete."));
+		} else {
+			LOGGER.info(message("Retrieving taxonomy data."));
+			taxonomyItems = getTaxonomyData(url, spoolFile);
+			LOGGER.info(message("Taxonomy data retrieval complete."));
+		}
+
+		if (streaming || (taxonomyItems != null && taxonomyItems.size() > 0) || (compactTaxonomy != null && compactTaxonomy.size() > 0)) {
+			LOGGER.info(message("Writing new dimension file."));
+			boolean success = writeNewDimensionFile(url, spoolFile, taxonomyItems, compactTaxonomy, fileName, dimensionName);
+			LOGGER.info(message("New dimension file write complete."));
+			return success;
+		} else {
+			LOGGER.warning(message("No taxonomy data retrieved, aborting."));
+		}
+		return false;
+	}
+
+	private DimensionWriter createDimensionWriter(File outputFile) throws IOException {
+		boolean indent = !"false".equals(System.getProperty(INDENT_PROPERTY));
+
+		if (WRITER_MODE_DOM.equals(System.getProperty(WRITER_MODE_PROPERTY))) {
+			// Node offsets are only known to the StAX writer, publishing without an index removes the live one.
+			return new DomDimensionWriter(outputFile, indent);
+		}
+		return new StaxDimensionWriter(outputFile, indent, isIndexed());
+	}
+
+	// Everything besides the report that the published output depends on, as the raw property values.
+	private static String getOutputSettings(String dimensionName) {
+		StringBuilder settings = new StringBuilder("dimensionName=").append(dimensionName);
+		String[] properties = { DELTA_PROPERTY, INDENT_PROPERTY, INDEX_PROPERTY, INGESTION_MODE_PROPERTY, SHARD_SIZE_PROPERTY, SHARDS_PROPERTY,
+				STABLE_IDS_PROPERTY, TRANSFORM_MODE_PROPERTY, WRITER_MODE_PROPERTY };
+		for (String property : properties) {
+			settings.append('\n').append(property).append('=').append(System.getProperty(property));
+		}
+		return settings.toString();
+	}
+
+	private boolean isDeltaRequested() {
+		return "true".equals(System.getProperty(DELTA_PROPERTY));
+	}
+
+	// Nodes are matched between runs by the keys the id store assigns ids by, without it every id would change.
+	private boolean isDeltaOutput() {
+		return isDeltaRequested() && !"false".equals(System.getProperty(STABLE_IDS_PROPERTY));
+	}
+
+	private boolean isIndexed() {
+		return !"false".equals(System.getProperty(INDEX_PROPERTY));
+	}
+
+	// The live file was never touched, so dropping the staged output is all there is to undo.
+	private void discardNewDimensionFile(DimensionWriter writer, DimensionArchive archive, File stagingFile) {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, message("Failed to close dimension writer."), e);
+			}
+		}
+
+		if (stagingFile != null) {
+			LOGGER.info(message("Discarding incomplete dimension file, the previous file stays in place."));
+			archive.discard(stagingFile, DimensionIndex.INDEX_FILE_SUFFIX, DimensionDeltaWriter.DELTA_FILE_SUFFIX);
+		}
+	}
+
+	// Returns a spool file holding the report when it changed since the last successful run, or null when it did not.
+	private File fetchChangedReport(FetchCache cache, String url, String fileName, CacheEntry cacheEntry) throws IOException {
+		// Validators only count while the file they produced is still there.
+		CacheEntry previousEntry = getPublishedFile(fileName).exists() ? cache.get(url, fileName) : null;
+		if (previousEntry != null && !cacheEntry.getOutputSettings().equals(previousEntry.getOutputSettings())) {
+			LOGGER.info(message("Dimension name or output settings changed since the last run, rebuilding the dimension file."));
+			previousEntry = null;
+		}
+		long startTime = System.nanoTime();
+		try {
+			return fetchChangedReport(cache, url, fileName, cacheEntry, previousEntry);
+		} finally {
+			metrics.addStageTime(Stage.FETCH, System.nanoTime() - startTime);
+		}
+	}
+
+	private File fetchChangedReport(FetchCache cache, String url, String fileName, CacheEntry cacheEntry, CacheEntry previousEntry) throws IOException {
+		SynapticaResponse response;
+
+		if (previousEntry == null) {
+			response = client.fetch(url, null, null);
+		} else {
+			response = client.fetch(url, previousEntry.getEntityTag(), previousEntry.getLastModified());
+		}
+
+		metrics.setResponse(response);
+		if (response.isNotModified()) {
+			return null;
+		}
+
+		cacheEntry.setEntityTag(response.getEntityTag());
+		cacheEntry.setLastModified(response.getLastModified());
+
+		File spoolFile = cache.createSpoolFile();
+		try {
+			cacheEntry.setContentHash(cache.spool(response.getInputStream(), spoolFile));
+			metrics.setReportBytes(spoolFile.length());
+		} catch (IOException e) {
+			spoolFile.delete();
+			throw e;
+		}
+
+		if (previousEntry != null && cacheEntry.getContentHash().equals(previousEntry.getContentHash())) {
+			spoolFile.delete();
+			// Keep the latest validators so the next run can be answered with a 304.
+			cache.put(url, fileName, cacheEntry);
+			return null;
+		}
+
+		return spoolFile;
+	}
+
+	// Returns null when the report could not be retrieved or parsed.
+	private ArrayList<TaxonomyItem> getTaxonomyData(String urlString, File spoolFile) {
+		ArrayList<TaxonomyItem> taxonomyItems = null;
+		// A new adapter per report, its deduplication table is not thread safe.
+		Gson gson = new GsonBuilder().registerTypeAdapter(TaxonomyItem.class, new TaxonomyItemTypeAdapter()).create();
+
+		try {
+			CountingInputStream inputStream = openTaxonomyStream(urlString, spoolFile);
+			// Parsed straight off the (decompressed) stream rather than read into a string first.
+			BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+			long startTime = System.nanoTime();
+			try {
+				// Bound as an array, a TypeToken subclass would need its generic signature kept for native images.
+				TaxonomyItem[] items = gson.fromJson(reader, TaxonomyItem[].class);
+				if (items != null) {
+					taxonomyItems = new ArrayList<>(Arrays.asList(items));
+				}
+			} finally {
+				reader.close();
+				metrics.addStageTime(Stage.PARSE, System.nanoTime() - startTime);
+				metrics.setReportBytes(inputStream.getCount());
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, message("Error occured whilst retrieving taxonomy data. URL: " + urlString + "."), e);
+		} catch (JsonParseException e) {
+			LOGGER.log(Level.SEVERE, message("Error occured whilst retrieving taxonomy data. URL: " + urlString + "."), e);
+		}
+
+		return taxonomyItems;
+	}
+
+	// Returns null when the report could not be retrieved or parsed.
+	private CompactTaxonomy getCompactTaxonomyData(String urlString, File spoolFile) {
+		CompactTaxonomy compactTaxonomy = null;
+
+		try {
+			CountingInputStream inputStream = openTaxonomyStream(urlString, spoolFile);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+			long startTime = System.nanoTime();
+			try {
+				CompactTaxonomyBuilder builder = new CompactTaxonomyBuilder();
+				new TaxonomyStreamParser(builder).parse(reader);
+				compactTaxonomy = builder.build();
+			} finally {
+				reader.close();
+				metrics.addStageTime(Stage.PARSE, System.nanoTime() - startTime);
+				metrics.setReportBytes(inputStream.getCount());
+			}
+			LOGGER.info(message("Compacted " + compactTaxonomy.size() + " terms into " + compactTaxonomy.getStringCount() + " distinct strings."));
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, message("Error occured whilst retrieving taxonomy data. URL: " + urlString + "."), e);
+		} catch (JsonParseException e) {
+			LOGGER.log(Level.SEVERE, message("Error occured whilst retrieving taxonomy data. URL: " + urlString + "."), e);
+		}
+
+		return compactTaxonomy;
+	}
+
+	private File getOutputFile(String fileName) {
+		File directory = new File(outputFolderPath);
+		return new File(directory.getAbsolutePath().concat(File.separator).concat(fileName));
+	}
+
+	// The dimension file, or for sharded output the folder of shards, that is archived and rolled back as one.
+	private String getOutputName(String fileName) {
+		return isShardedOutput() ? fileName.concat(SHARD_DIRECTORY_SUFFIX) : fileName;
+	}
+
+	// The file whose presence means the last run's output is in place, a shard set only counts once its manifest is written.
+	private File getPublishedFile(String fileName) {
+		if (isShardedOutput()) {
+			return new File(getOutputFile(getOutputName(fileName)), ShardedTaxonomyTransformer.MANIFEST_FILE_NAME);
+		}
+		return getOutputFile(fileName);
+	}
+
+	private boolean isShardingRequested() {
+		return Integer.getInteger(SHARDS_PROPERTY, 0) > 0 || System.getProperty(SHARD_SIZE_PROPERTY) != null;
+	}
+
+	// Shards are planned over the whole taxonomy, so they need a parsed one, and are always written with StAX.
+	private boolean isShardedOutput() {
+		return isShardingRequested() && !INGESTION_MODE_STREAM.equals(System.getProperty(INGESTION_MODE_PROPERTY)) && !WRITER_MODE_DOM.equals(System.getProperty(WRITER_MODE_PROPERTY));
+	}
+
+	// Accepts a number of bytes with an optional k, m or g suffix.
+	private static long parseByteSize(String value) throws IOException {
+		String lowerCase = value.trim().toLowerCase(Locale.ROOT);
+		long multiplier = 1;
+		if (lowerCase.endsWith("k")) {
+			multiplier = 1024;
+		} else if (lowerCase.endsWith("m")) {
+			multiplier = 1024 * 1024;
+		} else if (lowerCase.endsWith("g")) {
+			multiplier = 1024 * 1024 * 1024;
+		}
+
+		try {
+			long size = Long.parseLong(multiplier == 1 ? lowerCase : lowerCase.substring(0, lowerCase.length() - 1)) * multiplier;
+			if (size <= 0) {
+				throw new NumberFormatException();
+			}
+			return size;
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid shard size: " + value + ".");
+		}
+	}
+
+	private String formatStageTimes() {
+		StringBuilder builder = new StringBuilder("Stage times:");
+		for (Stage stage : Stage.values()) {
+			builder.append(' ').append(stage.name().toLowerCase(Locale.ROOT)).append('=').append(String.format(Locale.ROOT, "%.3f", metrics.getStageNanos(stage) / 1e6)).append("ms");
+		}
+		return builder.append(". Nodes: ").append(metrics.getItemCount()).append('.').toString();
+	}
+
+	private String message(String text) {
+		return "[" + job.getFileName() + "] " + text;
+	}
+
+	// Returns null when stable ids are switched off and ids are simply counted from 1 each run.
+	private StableIdStore openIdStore(String fileName) throws IOException {
+		if ("false".equals(System.getProperty(STABLE_IDS_PROPERTY))) {
+			return null;
+		}
+
+		File directory = new File(new File(outputFolderPath).getAbsolutePath().concat(File.separator).concat(ID_STORE_FOLDER));
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Failed to create id store folder: " + directory.getAbsolutePath() + ".");
+		}
+
+		StableIdStore idStore = StableIdStore.open(new File(directory, fileName.concat(".ids")), new File(directory, fileName.concat(".idx")));
+		LOGGER.info(message("Loaded id store with " + idStore.size() + " known terms."));
+		return idStore;
+	}
+
+	// Without a spool file the report is requested here, the fetch stage then only covers the wait for the response.
+	private CountingInputStream openTaxonomyStream(String urlString, File spoolFile) throws IOException {
+		if (spoolFile != null) {
+			return new CountingInputStream(new FileInputStream(spoolFile));
+		}
+
+		long startTime = System.nanoTime();
+		try {
+			SynapticaResponse response = client.fetch(urlString, null, null);
+			metrics.setResponse(response);
+			return new CountingInputStream(response.getInputStream());
+		} finally {
+			metrics.addStageTime(Stage.FETCH, System.nanoTime() - startTime);
+		}
+	}
+
+	// Reading the report counts as parse and handling the items as transform, the two are interleaved.
+	private void streamTaxonomyData(String urlString, File spoolFile, TaxonomyItemHandler handler) throws IOException {
+		CountingInputStream inputStream = openTaxonomyStream(urlString, spoolFile);
+		TimedTaxonomyItemHandler timedHandler = new TimedTaxonomyItemHandler(handler);
+		long startTime = System.nanoTime();
+
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+			new TaxonomyStreamParser(timedHandler).parse(reader);
+		} finally {
+			inputStream.close();
+			metrics.addStageTime(Stage.PARSE, System.nanoTime() - startTime - timedHandler.getNanos());
+			metrics.addStageTime(Stage.TRANSFORM, timedHandler.getNanos());
+			metrics.setReportBytes(inputStream.getCount());
+		}
+	}
+
+	// Walks a tree whose ids were all assigned up front, as the parallel and sharded transforms do with stable ids.
+	private static void recordSnapshot(TaxonomySnapshotBuilder snapshotBuilder, ArrayList<TaxonomyItem> taxonomyItems, CompactTaxonomy compactTaxonomy) throws IOException {
+		if (snapshotBuilder == null) {
+			return;
+		}
+		if (compactTaxonomy == null) {
+			TaxonomyTreeWalker.walk(taxonomyItems, snapshotBuilder, null, 0);
+		} else {
+			TaxonomyTreeWalker.walk(compactTaxonomy, snapshotBuilder);
+		}
+	}
+
+	// Passes each item on to the handler and then records it in the snapshot, once the handler has given it its id.
+	private static TaxonomyItemHandler recordingSnapshot(final TaxonomyItemHandler handler, final TaxonomySnapshotBuilder snapshotBuilder) {
+		if (snapshotBuilder == null) {
+			return handler;
+		}
+		return new TaxonomyItemHandler() {
+			@Override
+			public void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) throws IOException {
+				handler.handle(taxonomyItem, depth, parent);
+				snapshotBuilder.handle(taxonomyItem, depth, parent);
+			}
+		};
+	}
+
+	private File getSnapshotFolder() throws IOException {
+		File directory = new File(new File(outputFolderPath).getAbsolutePath().concat(File.separator).concat(SNAPSHOT_FOLDER));
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Failed to create snapshot folder: " + directory.getAbsolutePath() + ".");
+		}
+		return directory;
+	}
+
+	// Writes this run's snapshot to a staging file and, when the last published run left one, the delta from it next
+	// to the staged output. Returns the staged snapshot, or null when it could not be written. A delta is only ever
+	// written against the snapshot of the output it follows, so whenever that chain breaks the last snapshot is dropped
+	// and the next run writes the full file alone.
+	private File writeDelta(TaxonomySnapshotBuilder snapshotBuilder, String fileName, String dimensionName, File outputFile) {
+		File previousSnapshotFile = null;
+		File snapshotFile = null;
+
+		try {
+			File directory = getSnapshotFolder();
+			previousSnapshotFile = new File(directory, fileName.concat(SNAPSHOT_SUFFIX));
+			snapshotFile = File.createTempFile(fileName.concat(SNAPSHOT_SUFFIX), ".tmp", directory);
+			int nodeCount = snapshotBuilder.write(snapshotFile);
+			LOGGER.info(message("Recorded " + nodeCount + " nodes in the taxonomy snapshot."));
+			if (snapshotBuilder.getSkippedCount() > 0) {
+				LOGGER.info(message("Left " + snapshotBuilder.getSkippedCount() + " terms without a Uid, or repeated under a parent without one, out of the taxonomy snapshot."));
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, message("Failed to write taxonomy snapshot, the next run will not write a delta."), e);
+			if (snapshotFile != null) {
+				snapshotFile.delete();
+			}
+			if (previousSnapshotFile != null) {
+				previousSnapshotFile.delete();
+			}
+			return null;
+		}
+
+		if (!previousSnapshotFile.exists()) {
+			LOGGER.info(message("No snapshot of a previous run, writing the full file only."));
+			return snapshotFile;
+		}
+
+		DimensionDeltaWriter deltaWriter = new DimensionDeltaWriter(dimensionName);
+		File deltaFile = new File(outputFile.getPath().concat(DimensionDeltaWriter.DELTA_FILE_SUFFIX));
+		try {
+			int changedCount = deltaWriter.write(previousSnapshotFile, snapshotFile, deltaFile);
+			LOGGER.info(message("Delta lists " + changedCount + " changed nodes: " + deltaWriter.getAddedCount() + " added, " + deltaWriter.getRemovedCount() + " removed, " + deltaWriter.getRenamedCount() + " renamed, " + deltaWriter.getReparentedCount() + " reparented, " + deltaWriter.getUniquePathCount() + " with a new UNIQUE_PATH."));
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, message("Failed to write dimension delta, publishing the full file only."), e);
+			deltaFile.delete();
+		}
+		return snapshotFile;
+	}
+
+	// Output published without a delta breaks the chain of deltas, the next one could only be worked out against older output.
+	private void dropSnapshot(String fileName) {
+		File snapshotFile = new File(new File(outputFolderPath).getAbsolutePath().concat(File.separator).concat(SNAPSHOT_FOLDER), fileName.concat(SNAPSHOT_SUFFIX));
+		if (snapshotFile.exists() && !snapshotFile.delete()) {
+			LOGGER.warning(message("Failed to delete out of date taxonomy snapshot: " + snapshotFile.getName() + "."));
+		}
+	}
+
+	// Makes the staged snapshot the one the next run's delta is worked out against.
+	private void publishSnapshot(File snapshotFile, String fileName) {
+		File liveSnapshotFile = new File(snapshotFile.getParentFile(), fileName.concat(SNAPSHOT_SUFFIX));
+		try {
+			Files.move(snapshotFile.toPath(), liveSnapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, message("Failed to replace taxonomy snapshot, the next run will not write a delta."), e);
+			snapshotFile.delete();
+			liveSnapshotFile.delete();
+		}
+	}
+
+	private void writeRunReport() {
+		boolean json = !"false".equals(System.getProperty(METRICS_REPORT_PROPERTY));
+		boolean prometheus = "true".equals(System.getProperty(PROMETHEUS_PROPERTY));
+		RunReportWriter reportWriter = new RunReportWriter(outputFolderPath);
+
+		try {
+			if (json) {
+				reportWriter.writeJson(job, metrics);
+			}
+			if (prometheus) {
+				reportWriter.writePrometheus(job, metrics);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, message("Failed to write run report."), e);
+		}
+	}
+
+	// Output is written to a staging file and only published over the live file once it is complete.
+	private boolean writeNewDimensionFile(String urlString, File spoolFile, ArrayList<TaxonomyItem> taxonomyItems, CompactTaxonomy compactTaxonomy, String fileName, String dimensionName) {
+		boolean sharded = isShardedOutput();
+		DimensionArchive archive = new DimensionArchive(new File(outputFolderPath), getOutputName(fileName), MAX_ARCHIVE_FILES);
+		File outputFile = null;
+		TaxonomySnapshotBuilder snapshotBuilder = isDeltaOutput() ? new TaxonomySnapshotBuilder(dimensionName) : null;
+		File snapshotFile = null;
+		DimensionWriter writer = null;
+		StableIdStore idStore = null;
+
+		try {
+			long startTime = System.nanoTime();
+			outputFile = archive.createStagingFile(sharded);
+			idStore = openIdStore(fileName);
+			if (!sharded) {
+				writer = createDimensionWriter(outputFile);
+				writer.writeRoot(dimensionName);
+			}
+			metrics.addStageTime(Stage.WRITE, System.nanoTime() - startTime);
+			int itemCount;
+			int maxDepth;
+
+			if (sharded) {
+				startTime = System.nanoTime();
+				int shards = Integer.getInteger(SHARDS_PROPERTY, 0);
+				long shardSize = shards > 0 ? 0 : parseByteSize(System.getProperty(SHARD_SIZE_PROPERTY));
+				boolean indent = !"false".equals(System.getProperty(INDENT_PROPERTY));
+				ShardedTaxonomyTransformer transformer = new ShardedTaxonomyTransformer(dimensionName, idStore, indent, isIndexed(), shards, shardSize);
+				if (compactTaxonomy == null) {
+					itemCount = transformer.transform(taxonomyItems, outputFile, fileName);
+				} else {
+					itemCount = transformer.transform(compactTaxonomy, outputFile, fileName);
+				}
+				maxDepth = transformer.getMaxDepth();
+				LOGGER.info(message("Wrote " + itemCount + " terms to " + transformer.getShardsWritten() + " shards."));
+				recordSnapshot(snapshotBuilder, taxonomyItems, compactTaxonomy);
+				metrics.addStageTime(Stage.TRANSFORM, System.nanoTime() - startTime);
+			} else if (taxonomyItems == null && compactTaxonomy == null) {
+				// Without a parsed tree the terms are streamed from Synaptica straight into the writer.
+				TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(writer, dimensionName, new IdUtil(idStore));
+				streamTaxonomyData(urlString, spoolFile, recordingSnapshot(taxonomyItemWriter, snapshotBuilder));
+				itemCount = taxonomyItemWriter.getItemCount();
+				maxDepth = taxonomyItemWriter.getMaxDepth();
+			} else if (TRANSFORM_MODE_PARALLEL.equals(System.getProperty(TRANSFORM_MODE_PROPERTY)) && writer instanceof StaxDimensionWriter) {
+				startTime = System.nanoTime();
+				ParallelTaxonomyTransformer transformer = new ParallelTaxonomyTransformer(dimensionName, idStore);
+				if (compactTaxonomy == null) {
+					LOGGER.info(message("Transforming " + taxonomyItems.size() + " top-level branches in parallel."));
+					itemCount = transformer.transform(taxonomyItems, (StaxDimensionWriter) writer);
+				} else {
+					LOGGER.info(message("Transforming top-level branches of " + compactTaxonomy.size() + " terms in parallel."));
+					itemCount = transformer.transform(compactTaxonomy, (StaxDimensionWriter) writer);
+				}
+				maxDepth = transformer.getMaxDepth();
+				recordSnapshot(snapshotBuilder, taxonomyItems, compactTaxonomy);
+				metrics.addStageTime(Stage.TRANSFORM, System.nanoTime() - startTime);
+			} else {
+				startTime = System.nanoTime();
+				TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(writer, dimensionName, new IdUtil(idStore));
+				TaxonomyItemHandler handler = recordingSnapshot(taxonomyItemWriter, snapshotBuilder);
+				if (compactTaxonomy == null) {
+					TaxonomyTreeWalker.walk(taxonomyItems, handler, null, 0);
+				} else {
+					TaxonomyTreeWalker.walk(compactTaxonomy, handler);
+				}
+				itemCount = taxonomyItemWriter.getItemCount();
+				maxDepth = taxonomyItemWriter.getMaxDepth();
+				metrics.addStageTime(Stage.TRANSFORM, System.nanoTime() - startTime);
+			}
+
+			if (itemCount == 0) {
+				throw new IOException("No taxonomy data retrieved. URL: " + urlString + ".");
+			}
+			metrics.setItemCount(itemCount);
+			metrics.setMaxDepth(maxDepth + 1);
+
+			if (writer != null) {
+				startTime = System.nanoTime();
+				writer.finish();
+				writer.close();
+				metrics.addStageTime(Stage.WRITE, System.nanoTime() - startTime);
+			}
+
+			if (snapshotBuilder != null) {
+				startTime = System.nanoTime();
+				snapshotFile = writeDelta(snapshotBuilder, fileName, dimensionName, outputFile);
+				metrics.addStageTime(Stage.WRITE, System.nanoTime() - startTime);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, message("Failed to write new dimension file."), e);
+			discardNewDimensionFile(writer, archive, outputFile);
+			return false;
+		} catch (JsonParseException e) {
+			LOGGER.log(Level.SEVERE, message("Failed to write new dimension file."), e);
+			discardNewDimensionFile(writer, archive, outputFile);
+			return false;
+		} finally {
+			if (idStore != null) {
+				try {
+					idStore.close();
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, message("Failed to close id store."), e);
+				}
+			}
+		}
+
+		return publishNewDimensionFile(archive, outputFile, snapshotFile, fileName);
+	}
+
+	private boolean publishNewDimensionFile(DimensionArchive archive, File stagingFile, File snapshotFile, String fileName) {
+		LOGGER.info(message("Starting data archival step."));
+		long startTime = System.nanoTime();
+
+		try {
+			File backupFile = archive.publish(stagingFile);
+			if (backupFile == null) {
+				LOGGER.info(message("No existing file to archive, published " + archive.getLiveFile().getName() + "."));
+			} else {
+				LOGGER.info(message("Archived existing file to " + backupFile.getName() + " and published " + archive.getLiveFile().getName() + "."));
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, message("Failed to publish new dimension file, the previous file stays in place."), e);
+			archive.discard(stagingFile, DimensionIndex.INDEX_FILE_SUFFIX, DimensionDeltaWriter.DELTA_FILE_SUFFIX);
+			if (snapshotFile != null) {
+				snapshotFile.delete();
+			}
+			metrics.addStageTime(Stage.ARCHIVE, System.nanoTime() - startTime);
+			return false;
+		}
+
+		boolean sidecarsPublished = true;
+		try {
+			archive.publishSidecars(stagingFile, DimensionIndex.INDEX_FILE_SUFFIX, DimensionDeltaWriter.DELTA_FILE_SUFFIX);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, message("Published new dimension file, but failed to publish its index or delta. The new file is live without them."), e);
+			archive.discard(stagingFile, DimensionIndex.INDEX_FILE_SUFFIX, DimensionDeltaWriter.DELTA_FILE_SUFFIX);
+			sidecarsPublished = false;
+		}
+
+		if (snapshotFile == null) {
+			dropSnapshot(fileName);
+		} else if (sidecarsPublished) {
+			publishSnapshot(snapshotFile, fileName);
+		} else {
+			// This run's delta may be missing, keeping the previous snapshot makes the next delta cover this run's changes too.
+			snapshotFile.delete();
+		}
+
+		try {
+			LOGGER.info(message("Starting data archive clean up step."));
+			archive.prune();
+			LOGGER.info(message("Archive clean up step complete."));
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, message("Failed to clean up archive."), e);
+		}
+		metrics.addStageTime(Stage.ARCHIVE, System.nanoTime() - startTime);
+		LOGGER.info(message("Data archival step complete."));
+		return true;
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.realdecoy.main;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.realdecoy.model.DimensionJob;
+import com.realdecoy.util.TimeUtils;
+
+/**
+ * Reads and validates a job config, the JSON list of dimensions to crawl.
+ */
+class JobConfigReader {
+
+	private JobConfigReader() {
+	}
+
+	static ArrayList<DimensionJob> read(String jobConfigPath) throws IOException {
+		ArrayList<DimensionJob> jobs;
+
+		Reader reader = new InputStreamReader(new FileInputStream(jobConfigPath), Charset.forName("UTF-8"));
+		try {
+			DimensionJob[] jobArray = new Gson().fromJson(reader, DimensionJob[].class);
+			jobs = jobArray == null ? null : new ArrayList<>(Arrays.asList(jobArray));
+		} catch (JsonParseException e) {
+			throw new IOException("Failed to parse job config: " + jobConfigPath + ".", e);
+		} finally {
+			reader.close();
+		}
+
+		if (jobs == null || jobs.isEmpty()) {
+			throw new IOException("No dimension jobs found in job config: " + jobConfigPath + ".");
+		}
+
+		HashSet<String> fileNames = new HashSet<>();
+		for (DimensionJob job : jobs) {
+			if (job.getUrl() == null || job.getFileName() == null || job.getDimensionName() == null) {
+				throw new IOException("Dimension jobs require a url, fileName and dimensionName. Job config: " + jobConfigPath + ".");
+			}
+
+			// Jobs run concurrently, two of them writing and archiving the same file would corrupt each other.
+			if (!fileNames.add(job.getFileName())) {
+				throw new IOException("Duplicate fileName: " + job.getFileName() + " found in job config: " + jobConfigPath + ".");
+			}
+
+			if (job.getSchedule() != null) {
+				try {
+					TimeUtils.parseDuration(job.getSchedule());
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Invalid schedule for " + job.getFileName() + " in job config: " + jobConfigPath + ". " + e.getMessage(), e);
+				}
+			}
+		}
+
+		return jobs;
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.realdecoy.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read through it.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private volatile long count = 0;
+
+	public CountingInputStream(InputStream inputStream) {
+		super(inputStream);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = super.read();
+		if (read != -1) {
+			count++;
+		}
+		return read;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int read = super.read(buffer, offset, length);
+		if (read > 0) {
+			count += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		// Re-reading after a reset would be counted twice.
+		return false;
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.realdecoy.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import com.realdecoy.http.SynapticaResponse;
+
+/**
+ * Timings and counters for one crawl of one dimension. Stage times are summed
+ * in nanoseconds, a stage that runs more than once (or not at all) simply
+ * adds up. Where stages overlap on the same stream the time is split at the
+ * handler boundary: parse is reading the report, transform is everything the
+ * item handler does, write is completing and closing the dimension file.
+ */
+public class CrawlMetrics {
+
+	public enum Stage {
+		FETCH, PARSE, TRANSFORM, ARCHIVE, WRITE
+	}
+
+	public enum Status {
+		UPDATED, UNCHANGED, FAILED
+	}
+
+	private long endNanos;
+	private int itemCount;
+	private int maxDepth;
+	private long reportBytes;
+	private SynapticaResponse response;
+	private final long[] stageNanos = new long[Stage.values().length];
+	private final long startNanos = System.nanoTime();
+	private final long startTime = System.currentTimeMillis();
+	private Status status = Status.FAILED;
+
+	public void addStageTime(Stage stage, long nanos) {
+		stageNanos[stage.ordinal()] += nanos;
+	}
+
+	public void finish(Status status) {
+		this.status = status;
+		endNanos = System.nanoTime();
+	}
+
+	// Bytes of the report as they came off the wire, before decompression.
+	public long getBytesReceived() {
+		return response == null ? 0 : response.getBytesReceived();
+	}
+
+	public long getDurationNanos() {
+		return (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public void setItemCount(int itemCount) {
+		this.itemCount = itemCount;
+	}
+
+	// Number of levels in the taxonomy, top-level terms being level 1.
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	// Items over the whole crawl, fetch included.
+	public double getNodesPerSecond() {
+		long durationNanos = getDurationNanos();
+		return durationNanos == 0 ? 0 : itemCount * 1e9 / durationNanos;
+	}
+
+	// Peak heap use of the whole JVM, summed over the heap pools. Concurrent jobs share it.
+	public long getPeakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	// Bytes of JSON read, after decompression.
+	public long getReportBytes() {
+		return reportBytes;
+	}
+
+	public void setReportBytes(long reportBytes) {
+		this.reportBytes = reportBytes;
+	}
+
+	public void setResponse(SynapticaResponse response) {
+		this.response = response;
+	}
+
+	public long getStageNanos(Stage stage) {
+		return stageNanos[stage.ordinal()];
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.realdecoy.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import com.google.gson.stream.JsonWriter;
+import com.realdecoy.metrics.CrawlMetrics.Stage;
+import com.realdecoy.model.DimensionJob;
+
+/**
+ * Writes the metrics of a crawl next to its dimension file, as a JSON run
+ * report and optionally in the Prometheus text exposition format for the node
+ * exporter's textfile collector. Both files are replaced atomically so a
+ * reader never sees half a report.
+ */
+public class RunReportWriter {
+
+	private static final String JSON_SUFFIX = ".report.json";
+	private static final String PROMETHEUS_SUFFIX = ".prom";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File directory;
+
+	public RunReportWriter(String outputFolderPath) {
+		this.directory = new File(outputFolderPath).getAbsoluteFile();
+	}
+
+	public File writeJson(DimensionJob job, CrawlMetrics metrics) throws IOException {
+		File reportFile = new File(directory, job.getFileName().concat(JSON_SUFFIX));
+		File temporaryFile = File.createTempFile(reportFile.getName(), ".tmp", directory);
+
+		try {
+			JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8));
+			try {
+				writer.setIndent("  ");
+				writer.beginObject();
+				writer.name("dimensionName").value(job.getDimensionName());
+				writer.name("fileName").value(job.getFileName());
+				writer.name("url").value(job.getUrl());
+				writer.name("status").value(metrics.getStatus().name().toLowerCase(Locale.ROOT));
+				writer.name("startTime").value(formatTime(metrics.getStartTime()));
+				writer.name("durationNanos").value(metrics.getDurationNanos());
+
+				writer.name("stageNanos").beginObject();
+				for (Stage stage : Stage.values()) {
+					writer.name(stage.name().toLowerCase(Locale.ROOT)).value(metrics.getStageNanos(stage));
+				}
+				writer.endObject();
+
+				writer.name("bytesReceived").value(metrics.getBytesReceived());
+				writer.name("reportBytes").value(metrics.getReportBytes());
+				writer.name("nodes").value(metrics.getItemCount());
+				writer.name("maxDepth").value(metrics.getMaxDepth());
+				writer.name("nodesPerSecond").value(Math.round(metrics.getNodesPerSecond() * 10) / 10.0);
+				writer.name("peakHeapBytes").value(metrics.getPeakHeapBytes());
+				writer.endObject();
+			} finally {
+				writer.close();
+			}
+			replace(temporaryFile, reportFile);
+		} finally {
+			temporaryFile.delete();
+		}
+
+		return reportFile;
+	}
+
+	public File writePrometheus(DimensionJob job, CrawlMetrics metrics) throws IOException {
+		File metricsFile = new File(directory, job.getFileName().concat(PROMETHEUS_SUFFIX));
+		File temporaryFile = File.createTempFile(metricsFile.getName(), ".tmp", directory);
+		String labels = "dimension=\"" + escapeLabel(job.getDimensionName()) + "\",file=\"" + escapeLabel(job.getFileName()) + "\"";
+
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8);
+			try {
+				writeHeader(writer, "crawler_stage_duration_seconds", "Time spent in each stage of the last crawl.");
+				for (Stage stage : Stage.values()) {
+					writeSample(writer, "crawler_stage_duration_seconds", labels + ",stage=\"" + stage.name().toLowerCase(Locale.ROOT) + "\"", metrics.getStageNanos(stage) / 1e9);
+				}
+				writeGauge(writer, "crawler_run_duration_seconds", "Duration of the last crawl.", labels, metrics.getDurationNanos() / 1e9);
+				writeGauge(writer, "crawler_run_timestamp_seconds", "Start time of the last crawl.", labels, metrics.getStartTime() / 1e3);
+				writeGauge(writer, "crawler_run_success", "Whether the last crawl left the dimension file up to date.", labels, metrics.getStatus() == CrawlMetrics.Status.FAILED ? 0 : 1);
+				writeGauge(writer, "crawler_bytes_received", "Bytes of the report received off the wire, before decompression, by the last crawl.", labels, metrics.getBytesReceived());
+				writeGauge(writer, "crawler_report_bytes", "Decompressed bytes of the report read by the last crawl.", labels, metrics.getReportBytes());
+				writeGauge(writer, "crawler_nodes", "Taxonomy nodes written by the last crawl.", labels, metrics.getItemCount());
+				writeGauge(writer, "crawler_max_depth", "Deepest taxonomy level seen by the last crawl.", labels, metrics.getMaxDepth());
+				writeGauge(writer, "crawler_nodes_per_second", "Taxonomy nodes per second over the last crawl.", labels, metrics.getNodesPerSecond());
+				writeGauge(writer, "crawler_peak_heap_bytes", "Peak heap use of the crawler process.", labels, metrics.getPeakHeapBytes());
+			} finally {
+				writer.close();
+			}
+			replace(temporaryFile, metricsFile);
+		} finally {
+			temporaryFile.delete();
+		}
+
+		return metricsFile;
+	}
+
+	private static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String formatTime(long time) {
+		SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ROOT);
+		simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return simpleDateFormat.format(new Date(time));
+	}
+
+	private static void replace(File source, File target) throws IOException {
+		Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeGauge(Writer writer, String name, String help, String labels, double value) throws IOException {
+		writeHeader(writer, name, help);
+		writeSample(writer, name, labels, value);
+	}
+
+	private static void writeHeader(Writer writer, String name, String help) throws IOException {
+		writer.write("# HELP " + name + " " + help + "\n");
+		writer.write("# TYPE " + name + " gauge\n");
+	}
+
+	private static void writeSample(Writer writer, String name, String labels, double value) throws IOException {
+		writer.write(name + "{" + labels + "} " + value + "\n");
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.realdecoy.metrics;
+
+import java.io.IOException;
+
+import com.realdecoy.model.TaxonomyItem;
+import com.realdecoy.parser.TaxonomyItemHandler;
+
+/**
+ * Adds up the time spent in the wrapped handler, so a streamed pass can be
+ * split into the time taken to read items and the time taken to handle them.
+ */
+public class TimedTaxonomyItemHandler implements TaxonomyItemHandler {
+
+	private final TaxonomyItemHandler handler;
+	private long nanos = 0;
+
+	public TimedTaxonomyItemHandler(TaxonomyItemHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) throws IOException {
+		long startTime = System.nanoTime();
+		try {
+			handler.handle(taxonomyItem, depth, parent);
+		} finally {
+			nanos += System.nanoTime() - startTime;
+		}
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+}
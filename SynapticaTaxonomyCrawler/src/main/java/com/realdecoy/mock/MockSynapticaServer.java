@@ -0,0 +1,292 @@
+package com.realdecoy.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.realdecoy.util.ExecutorUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the Synaptica REST API, for load tests and for reproducing slow
+ * networks without an outside service. Every request, whatever its path and
+ * credentials, is answered with a saved report: a snapshot file, a snapshot
+ * picked from a folder by the last path segment, or a synthetic taxonomy.
+ * Responses honour Accept-Encoding: gzip and If-None-Match, and can be held
+ * back by a fixed latency and a bandwidth limit.
+ *
+ * Usage:
+ *   -snapshot file|folder | -nodes n [-depth d] [-fanOut f]
+ *   [-port 8089] [-latency milliseconds] [-bandwidth bytesPerSecond, k and m suffixes allowed]
+ *
+ * The com.sun.net.httpserver server only speaks HTTP/1.1, the crawler's client falls back to it.
+ */
+public class MockSynapticaServer {
+
+	private static final int DEFAULT_DEPTH = 6;
+	private static final int DEFAULT_FAN_OUT = 10;
+	private static final int DEFAULT_PORT = 8089;
+	private static final Logger LOGGER = Logger.getLogger(MockSynapticaServer.class.getName());
+	private static final int MAX_THREADS = 64;
+
+	private final long bandwidth;
+	private final long latency;
+	// Snapshots by file, reloaded when the file changes.
+	private final ConcurrentHashMap<File, Report> snapshots = new ConcurrentHashMap<>();
+	private final File snapshot;
+	private final Report syntheticReport;
+
+	MockSynapticaServer(File snapshot, Report syntheticReport, long latency, long bandwidth) {
+		this.snapshot = snapshot;
+		this.syntheticReport = syntheticReport;
+		this.latency = latency;
+		this.bandwidth = bandwidth;
+	}
+
+	public static void main(String... args) {
+		int port = DEFAULT_PORT;
+		long latency = 0;
+		long bandwidth = 0;
+		String snapshotPath = null;
+		int nodes = 0;
+		int depth = DEFAULT_DEPTH;
+		int fanOut = DEFAULT_FAN_OUT;
+
+		try {
+			if (args.length % 2 != 0) {
+				throw new IllegalArgumentException("Every parameter needs a value.");
+			}
+			for (int i = 0; i < args.length; i += 2) {
+				String value = args[i + 1];
+				switch (args[i]) {
+				case "-port":
+					port = Integer.parseInt(value);
+					break;
+				case "-latency":
+					latency = Long.parseLong(value);
+					break;
+				case "-bandwidth":
+					bandwidth = parseBandwidth(value);
+					break;
+				case "-snapshot":
+					snapshotPath = value;
+					break;
+				case "-nodes":
+					nodes = Integer.parseInt(value);
+					break;
+				case "-depth":
+					depth = Integer.parseInt(value);
+					break;
+				case "-fanOut":
+					fanOut = Integer.parseInt(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown parameter found: " + args[i]);
+				}
+			}
+			if ((snapshotPath == null) == (nodes == 0)) {
+				throw new IllegalArgumentException("Either -snapshot or -nodes is required.");
+			}
+		} catch (IllegalArgumentException e) {
+			LOGGER.severe(e.getMessage());
+			LOGGER.info("Usage: -snapshot file|folder | -nodes n [-depth d] [-fanOut f] [-port port] [-latency milliseconds] [-bandwidth bytesPerSecond]");
+			LOGGER.info("Aborting");
+			System.exit(1);
+		}
+
+		try {
+			Report syntheticReport = null;
+			if (nodes > 0) {
+				LOGGER.info("Generating synthetic taxonomy of " + nodes + " terms.");
+				syntheticReport = new Report(new TaxonomyGenerator(nodes, depth, fanOut).generate());
+			}
+
+			MockSynapticaServer server = new MockSynapticaServer(snapshotPath == null ? null : new File(snapshotPath), syntheticReport, latency, bandwidth);
+			server.start(port);
+			LOGGER.info("Mock Synaptica server listening on port " + port + ".");
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Failed to start mock Synaptica server.", e);
+			System.exit(1);
+		}
+	}
+
+	public HttpServer start(int port) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.setExecutor(ExecutorUtils.newBoundedExecutor(MAX_THREADS, "mock-synaptica"));
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					respond(exchange);
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to answer " + exchange.getRequestURI() + ".", e);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		Report report = findReport(exchange.getRequestURI().getPath());
+		if (report == null) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted whilst delaying response.");
+			}
+		}
+
+		exchange.getResponseHeaders().set("ETag", report.entityTag);
+		if (report.entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+		byte[] body = gzip ? report.compressed : report.content;
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		if (gzip) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(200, body.length);
+
+		OutputStream outputStream = exchange.getResponseBody();
+		if (bandwidth > 0) {
+			outputStream = new ThrottledOutputStream(outputStream, bandwidth);
+		}
+		outputStream.write(body);
+		outputStream.close();
+	}
+
+	private Report findReport(String path) throws IOException {
+		if (syntheticReport != null) {
+			return syntheticReport;
+		}
+
+		File file = snapshot;
+		if (snapshot.isDirectory()) {
+			String name = path.substring(path.lastIndexOf('/') + 1);
+			file = null;
+			for (String candidate : new String[] { name, name + ".json", name + ".json.gz", name + ".gz" }) {
+				File candidateFile = new File(snapshot, candidate);
+				if (!name.isEmpty() && candidateFile.isFile()) {
+					file = candidateFile;
+					break;
+				}
+			}
+			if (file == null) {
+				return null;
+			}
+		}
+
+		Report report = snapshots.get(file);
+		if (report == null || report.lastModified != file.lastModified()) {
+			report = Report.load(file);
+			snapshots.put(file, report);
+		}
+		return report;
+	}
+
+	private static long parseBandwidth(String value) {
+		String lowerCase = value.toLowerCase(Locale.ROOT);
+		long multiplier = 1;
+		if (lowerCase.endsWith("k")) {
+			multiplier = 1024;
+		} else if (lowerCase.endsWith("m")) {
+			multiplier = 1024 * 1024;
+		}
+		return Long.parseLong(multiplier == 1 ? lowerCase : lowerCase.substring(0, lowerCase.length() - 1)) * multiplier;
+	}
+
+	// A saved report held in memory both as is and gzip compressed.
+	static class Report {
+
+		private final byte[] compressed;
+		private final byte[] content;
+		private final String entityTag;
+		private final long lastModified;
+
+		Report(byte[] content) throws IOException {
+			this(content, compress(content), 0);
+		}
+
+		private Report(byte[] content, byte[] compressed, long lastModified) {
+			this.content = content;
+			this.compressed = compressed;
+			this.lastModified = lastModified;
+			this.entityTag = "\"" + hash(content) + "\"";
+		}
+
+		static Report load(File file) throws IOException {
+			long lastModified = file.lastModified();
+			byte[] bytes = Files.readAllBytes(file.toPath());
+
+			if (bytes.length > 1 && (bytes[0] & 0xFF) == 0x1F && (bytes[1] & 0xFF) == 0x8B) {
+				return new Report(decompress(bytes), bytes, lastModified);
+			}
+			return new Report(bytes, compress(bytes), lastModified);
+		}
+
+		private static byte[] compress(byte[] content) throws IOException {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(32, content.length / 8));
+			GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+			gzipOutputStream.write(content);
+			gzipOutputStream.close();
+			return outputStream.toByteArray();
+		}
+
+		private static byte[] decompress(byte[] compressed) throws IOException {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(compressed.length * 8);
+			InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed));
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, read);
+			}
+			inputStream.close();
+			return outputStream.toByteArray();
+		}
+
+		private static String hash(byte[] content) {
+			try {
+				byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+				StringBuilder builder = new StringBuilder();
+				for (int i = 0; i < 12; i++) {
+					builder.append(String.format("%02x", digest[i]));
+				}
+				return builder.toString();
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not available.", e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.realdecoy.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Generates a synthetic Synaptica hierarchical saved report. Top-level terms
+ * are added until the requested number of terms is reached, each one filled
+ * out depth first with fanOut related terms per term down to the requested
+ * depth. Names mix in characters the writers have to escape.
+ */
+public class TaxonomyGenerator {
+
+	private static final String[] WORDS = { "Strategy", "Finance", "Leadership", "Operations", "Marketing", "R&D", "Health <Care>", "Café", "\"Quoted\"", "Supply Chain" };
+
+	private final int depth;
+	private final int fanOut;
+	private final int nodeCount;
+	private int generated;
+
+	public TaxonomyGenerator(int nodeCount, int depth, int fanOut) {
+		if (nodeCount < 1 || depth < 1 || fanOut < 1) {
+			throw new IllegalArgumentException("nodeCount, depth and fanOut must all be at least 1.");
+		}
+		this.nodeCount = nodeCount;
+		this.depth = depth;
+		this.fanOut = fanOut;
+	}
+
+	public byte[] generate() throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(nodeCount * 96);
+		JsonWriter writer = new JsonWriter(new OutputStreamWriter(outputStream, Charset.forName("UTF-8")));
+		generated = 0;
+
+		writer.beginArray();
+		while (generated < nodeCount) {
+			writeItem(writer, 1);
+		}
+		writer.endArray();
+		writer.close();
+
+		return outputStream.toByteArray();
+	}
+
+	private void writeItem(JsonWriter writer, int level) throws IOException {
+		int number = ++generated;
+
+		writer.beginObject();
+		writer.name("Name").value(WORDS[number % WORDS.length] + " " + number);
+		writer.name("Uid").value("TERM-" + Integer.toHexString(number * 0x9E3779B1));
+		writer.name("VocabName").value("Synthetic");
+
+		if (level < depth && generated < nodeCount) {
+			writer.name("RelatedTerms").beginArray();
+			for (int i = 0; i < fanOut && generated < nodeCount; i++) {
+				writeItem(writer, level + 1);
+			}
+			writer.endArray();
+		}
+
+		writer.endObject();
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.realdecoy.mock;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Holds writes back to a fixed number of bytes per second, in small chunks so
+ * the receiver sees a steady trickle rather than bursts.
+ */
+class ThrottledOutputStream extends FilterOutputStream {
+
+	private static final int MIN_CHUNK_SIZE = 512;
+
+	private final long bytesPerSecond;
+	private final int chunkSize;
+	private final long startTime = System.nanoTime();
+	private long written = 0;
+
+	ThrottledOutputStream(OutputStream outputStream, long bytesPerSecond) {
+		super(outputStream);
+		this.bytesPerSecond = bytesPerSecond;
+		this.chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(64 * 1024, bytesPerSecond / 20));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		written++;
+		throttle();
+	}
+
+	@Override
+	public void write(byte[] buffer, int offset, int length) throws IOException {
+		while (length > 0) {
+			int chunk = Math.min(length, chunkSize);
+			out.write(buffer, offset, chunk);
+			// Pushed out now so the delay below is seen by the client, not hidden in a buffer.
+			out.flush();
+			written += chunk;
+			offset += chunk;
+			length -= chunk;
+			throttle();
+		}
+	}
+
+	private void throttle() throws IOException {
+		long dueNanos = written * 1000000000L / bytesPerSecond;
+		long aheadNanos = dueNanos - (System.nanoTime() - startTime);
+
+		if (aheadNanos > 0) {
+			try {
+				Thread.sleep(aheadNanos / 1000000L, (int) (aheadNanos % 1000000L));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted whilst throttling response.");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.realdecoy.model;
+
+import java.nio.charset.Charset;
+
+/**
+ * Column oriented form of a parsed taxonomy. Terms are numbered in document
+ * order, so a parent always comes before its related terms and every subtree
+ * is a contiguous range of numbers. The tree is held as parent, first child
+ * and next sibling links, and names, Uids and vocabulary names are indexes
+ * into a pool in which each distinct string appears once, stored as UTF-8 in a
+ * single byte array. Strings are decoded again each time they are read.
+ *
+ * A missing link is -1, as is the pool index of a missing string.
+ */
+public class CompactTaxonomy {
+
+	public static final int NONE = -1;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final int[] firstChildren;
+	private String[] generatedUids;
+	private final int[] names;
+	private final int[] nextSiblings;
+	private final int[] parents;
+	private final int size;
+	private final byte[] stringData;
+	// Start of each pool string in stringData, followed by the end of the last one.
+	private final int[] stringOffsets;
+	private final int[] taxonomyNames;
+	private final int[] uids;
+
+	public CompactTaxonomy(int size, int[] parents, int[] firstChildren, int[] nextSiblings, int[] names, int[] uids, int[] taxonomyNames, byte[] stringData, int[] stringOffsets) {
+		this.size = size;
+		this.parents = parents;
+		this.firstChildren = firstChildren;
+		this.nextSiblings = nextSiblings;
+		this.names = names;
+		this.uids = uids;
+		this.taxonomyNames = taxonomyNames;
+		this.stringData = stringData;
+		this.stringOffsets = stringOffsets;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Number of distinct strings in the pool.
+	public int getStringCount() {
+		return stringOffsets.length - 1;
+	}
+
+	public int getFirstChild(int term) {
+		return firstChildren[term];
+	}
+
+	// Null until an id has been set.
+	public String getGeneratedUid(int term) {
+		return generatedUids == null ? null : generatedUids[term];
+	}
+
+	public void setGeneratedUid(int term, String generatedUid) {
+		if (generatedUids == null) {
+			generatedUids = new String[size];
+		}
+		generatedUids[term] = generatedUid;
+	}
+
+	public String getName(int term) {
+		return getString(names[term]);
+	}
+
+	public int getNextSibling(int term) {
+		return nextSiblings[term];
+	}
+
+	public int getParent(int term) {
+		return parents[term];
+	}
+
+	// First term after the subtree rooted at the term, size() when the subtree runs to the end.
+	public int getSubtreeEnd(int term) {
+		for (int ancestor = term; ancestor != NONE; ancestor = parents[ancestor]) {
+			if (nextSiblings[ancestor] != NONE) {
+				return nextSiblings[ancestor];
+			}
+		}
+		return size;
+	}
+
+	public String getTaxonomyName(int term) {
+		return getString(taxonomyNames[term]);
+	}
+
+	public String getUid(int term) {
+		return getString(uids[term]);
+	}
+
+	private String getString(int index) {
+		return index == NONE ? null : new String(stringData, stringOffsets[index], stringOffsets[index + 1] - stringOffsets[index], UTF_8);
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.realdecoy.model;
+
+public class DimensionJob {
+
+	private String dimensionName;
+
+	private String fileName;
+
+	// How often the daemon crawls the dimension, e.g. "30m", "6h" or "PT15M". Ignored by one-shot runs.
+	private String schedule;
+
+	private String url;
+
+	public DimensionJob() {
+	}
+
+	public DimensionJob(String url, String fileName, String dimensionName) {
+		this.url = url;
+		this.fileName = fileName;
+		this.dimensionName = dimensionName;
+	}
+
+	public String getDimensionName() {
+		return dimensionName;
+	}
+
+	public void setDimensionName(String dimensionName) {
+		this.dimensionName = dimensionName;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public String getSchedule() {
+		return schedule;
+	}
+
+	public void setSchedule(String schedule) {
+		this.schedule = schedule;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.realdecoy.model;
+
+/**
+ * Outcome of the runs of one dimension job in daemon mode, in place of the
+ * exit code a one-shot run ends with.
+ */
+public class JobResult {
+
+	private int consecutiveFailures;
+
+	private String dimensionName;
+
+	private int failures;
+
+	private String fileName;
+
+	private long lastDurationMillis;
+
+	private String lastFinishTime;
+
+	private String lastStatus;
+
+	private int runs;
+
+	private String schedule;
+
+	private int skippedRuns;
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	public void setConsecutiveFailures(int consecutiveFailures) {
+		this.consecutiveFailures = consecutiveFailures;
+	}
+
+	public String getDimensionName() {
+		return dimensionName;
+	}
+
+	public void setDimensionName(String dimensionName) {
+		this.dimensionName = dimensionName;
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	public void setFailures(int failures) {
+		this.failures = failures;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public long getLastDurationMillis() {
+		return lastDurationMillis;
+	}
+
+	public void setLastDurationMillis(long lastDurationMillis) {
+		this.lastDurationMillis = lastDurationMillis;
+	}
+
+	public String getLastFinishTime() {
+		return lastFinishTime;
+	}
+
+	public void setLastFinishTime(String lastFinishTime) {
+		this.lastFinishTime = lastFinishTime;
+	}
+
+	public String getLastStatus() {
+		return lastStatus;
+	}
+
+	public void setLastStatus(String lastStatus) {
+		this.lastStatus = lastStatus;
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public void setRuns(int runs) {
+		this.runs = runs;
+	}
+
+	public String getSchedule() {
+		return schedule;
+	}
+
+	public void setSchedule(String schedule) {
+		this.schedule = schedule;
+	}
+
+	public int getSkippedRuns() {
+		return skippedRuns;
+	}
+
+	public void setSkippedRuns(int skippedRuns) {
+		this.skippedRuns = skippedRuns;
+	}
+
+}
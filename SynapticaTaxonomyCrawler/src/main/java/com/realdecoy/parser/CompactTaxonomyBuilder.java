@@ -0,0 +1,156 @@
+package com.realdecoy.parser;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.realdecoy.model.CompactTaxonomy;
+import com.realdecoy.model.TaxonomyItem;
+
+/**
+ * Collects taxonomy items handed over in document order into a
+ * {@link CompactTaxonomy}. Only the strings of each item are kept, so the
+ * items themselves can be dropped as soon as they have been handled.
+ */
+public class CompactTaxonomyBuilder implements TaxonomyItemHandler {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final float MAX_LOAD_FACTOR = 0.5f;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private int[] firstChildren = new int[INITIAL_CAPACITY];
+	// Last term added at each depth, the previous sibling of the next term added at that depth.
+	private int[] lastTerms = new int[16];
+	private int[] names = new int[INITIAL_CAPACITY];
+	private int[] nextSiblings = new int[INITIAL_CAPACITY];
+	private int[] parents = new int[INITIAL_CAPACITY];
+	private int size = 0;
+	private int stringCount = 0;
+	private byte[] stringData = new byte[INITIAL_CAPACITY * 16];
+	private int[] stringOffsets = new int[INITIAL_CAPACITY + 1];
+	// Open addressing table of pool indexes, hashed on the encoded string, used to find repeated strings.
+	private int[] stringTable = newStringTable(INITIAL_CAPACITY);
+	private int[] taxonomyNames = new int[INITIAL_CAPACITY];
+	private int[] uids = new int[INITIAL_CAPACITY];
+
+	public CompactTaxonomyBuilder() {
+		Arrays.fill(lastTerms, CompactTaxonomy.NONE);
+	}
+
+	@Override
+	public void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) {
+		if (size == parents.length) {
+			grow(size + (size >> 1));
+		}
+		if (depth + 1 >= lastTerms.length) {
+			int length = lastTerms.length;
+			lastTerms = Arrays.copyOf(lastTerms, Math.max(length * 2, depth + 2));
+			Arrays.fill(lastTerms, length, lastTerms.length, CompactTaxonomy.NONE);
+		}
+
+		int term = size++;
+		int parentTerm = depth == 0 ? CompactTaxonomy.NONE : lastTerms[depth - 1];
+		int previousSibling = lastTerms[depth];
+
+		parents[term] = parentTerm;
+		firstChildren[term] = CompactTaxonomy.NONE;
+		nextSiblings[term] = CompactTaxonomy.NONE;
+		names[term] = intern(taxonomyItem.getName());
+		uids[term] = intern(taxonomyItem.getUid());
+		taxonomyNames[term] = intern(taxonomyItem.getTaxonomyName());
+
+		// The last term seen at this depth is only a sibling if it came after the parent.
+		if (previousSibling != CompactTaxonomy.NONE && previousSibling > parentTerm) {
+			nextSiblings[previousSibling] = term;
+		} else if (parentTerm != CompactTaxonomy.NONE) {
+			firstChildren[parentTerm] = term;
+		}
+		lastTerms[depth] = term;
+	}
+
+	public CompactTaxonomy build() {
+		return new CompactTaxonomy(size, Arrays.copyOf(parents, size), Arrays.copyOf(firstChildren, size), Arrays.copyOf(nextSiblings, size), Arrays.copyOf(names, size), Arrays.copyOf(uids, size), Arrays.copyOf(taxonomyNames, size), Arrays.copyOf(stringData, stringOffsets[stringCount]), Arrays.copyOf(stringOffsets, stringCount + 1));
+	}
+
+	private void grow(int capacity) {
+		parents = Arrays.copyOf(parents, capacity);
+		firstChildren = Arrays.copyOf(firstChildren, capacity);
+		nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+		names = Arrays.copyOf(names, capacity);
+		uids = Arrays.copyOf(uids, capacity);
+		taxonomyNames = Arrays.copyOf(taxonomyNames, capacity);
+	}
+
+	private static int hash(byte[] data, int offset, int length) {
+		int hash = 1;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + data[i];
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private int intern(String value) {
+		if (value == null) {
+			return CompactTaxonomy.NONE;
+		}
+
+		byte[] bytes = value.getBytes(UTF_8);
+		int mask = stringTable.length - 1;
+		int slot = hash(bytes, 0, bytes.length) & mask;
+		for (int index = stringTable[slot]; index != CompactTaxonomy.NONE; index = stringTable[slot]) {
+			if (poolEquals(index, bytes)) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		int offset = stringOffsets[stringCount];
+		if (offset + bytes.length > stringData.length) {
+			stringData = Arrays.copyOf(stringData, Math.max(stringData.length + (stringData.length >> 1), offset + bytes.length));
+		}
+		if (stringCount + 1 == stringOffsets.length) {
+			stringOffsets = Arrays.copyOf(stringOffsets, stringOffsets.length + (stringOffsets.length >> 1));
+		}
+		System.arraycopy(bytes, 0, stringData, offset, bytes.length);
+		int index = stringCount++;
+		stringOffsets[stringCount] = offset + bytes.length;
+		stringTable[slot] = index;
+
+		if (stringCount > stringTable.length * MAX_LOAD_FACTOR) {
+			rehash(stringTable.length * 2);
+		}
+		return index;
+	}
+
+	private static int[] newStringTable(int capacity) {
+		int[] table = new int[capacity];
+		Arrays.fill(table, CompactTaxonomy.NONE);
+		return table;
+	}
+
+	private boolean poolEquals(int index, byte[] bytes) {
+		int offset = stringOffsets[index];
+		if (stringOffsets[index + 1] - offset != bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (stringData[offset + i] != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash(int capacity) {
+		stringTable = newStringTable(capacity);
+		int mask = capacity - 1;
+
+		for (int index = 0; index < stringCount; index++) {
+			int slot = hash(stringData, stringOffsets[index], stringOffsets[index + 1] - stringOffsets[index]) & mask;
+			while (stringTable[slot] != CompactTaxonomy.NONE) {
+				slot = (slot + 1) & mask;
+			}
+			stringTable[slot] = index;
+		}
+	}
+
+}
@@ -0,0 +1,13 @@
+package com.realdecoy.parser;
+
+import java.io.IOException;
+
+import com.realdecoy.model.TaxonomyItem;
+
+public interface TaxonomyItemHandler {
+
+	// Called once per taxonomy item in document order, parents always before their related terms.
+	// Top level items are passed a depth of 0 and a null parent. Items may be reused once the call returns.
+	void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) throws IOException;
+
+}
@@ -0,0 +1,165 @@
+package com.realdecoy.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.realdecoy.model.TaxonomyItem;
+import com.realdecoy.util.StringDeduplicator;
+
+/**
+ * Binds taxonomy items without reflection, in place of Gson's reflective
+ * adapter. Names and vocabulary names go through a bounded
+ * {@link StringDeduplicator}, so a value such as the VocabName shared by every
+ * term is held once rather than once per term. Unknown fields are skipped
+ * without being read into memory, each list of related terms is allocated at
+ * its final size and an empty list is left null.
+ *
+ * Nested terms are read and written with an explicit stack rather than by
+ * recursion. The deduplication table makes an instance unsafe to share between
+ * threads.
+ */
+public class TaxonomyItemTypeAdapter extends TypeAdapter<TaxonomyItem> {
+
+	private static final int DEDUPLICATOR_CAPACITY = 1024;
+	private static final String NAME = "Name";
+	private static final String RELATED_TERMS = "RelatedTerms";
+	private static final String UID = "Uid";
+	private static final String VOCAB_NAME = "VocabName";
+
+	private final StringDeduplicator deduplicator = new StringDeduplicator(DEDUPLICATOR_CAPACITY);
+
+	@Override
+	public TaxonomyItem read(JsonReader jsonReader) throws IOException {
+		if (jsonReader.peek() == JsonToken.NULL) {
+			jsonReader.nextNull();
+			return null;
+		}
+
+		// The open item at each depth, and the related terms read for it so far.
+		ArrayList<TaxonomyItem> openItems = new ArrayList<>();
+		ArrayList<ArrayList<TaxonomyItem>> openRelatedTerms = new ArrayList<>();
+		int depth = 0;
+		boolean inRelatedTerms = false;
+
+		startItem(jsonReader, openItems, openRelatedTerms, depth);
+		while (true) {
+			if (inRelatedTerms) {
+				if (!jsonReader.hasNext()) {
+					jsonReader.endArray();
+					ArrayList<TaxonomyItem> relatedTerms = openRelatedTerms.get(depth);
+					openItems.get(depth).setRelatedTerms(relatedTerms.isEmpty() ? null : new ArrayList<>(relatedTerms));
+					relatedTerms.clear();
+					inRelatedTerms = false;
+				} else if (jsonReader.peek() == JsonToken.NULL) {
+					jsonReader.nextNull();
+				} else {
+					depth++;
+					startItem(jsonReader, openItems, openRelatedTerms, depth);
+					inRelatedTerms = false;
+				}
+				continue;
+			}
+
+			if (readFields(jsonReader, openItems.get(depth))) {
+				inRelatedTerms = true;
+				continue;
+			}
+
+			jsonReader.endObject();
+			TaxonomyItem taxonomyItem = openItems.get(depth);
+			openItems.set(depth, null);
+			if (depth == 0) {
+				return taxonomyItem;
+			}
+			depth--;
+			openRelatedTerms.get(depth).add(taxonomyItem);
+			inRelatedTerms = true;
+		}
+	}
+
+	// Fields are written before related terms so the streaming parser can hand each item on without buffering.
+	@Override
+	public void write(JsonWriter jsonWriter, TaxonomyItem taxonomyItem) throws IOException {
+		ArrayList<Iterator<TaxonomyItem>> iterators = new ArrayList<>();
+		writeItem(jsonWriter, taxonomyItem, iterators);
+
+		while (!iterators.isEmpty()) {
+			int top = iterators.size() - 1;
+			Iterator<TaxonomyItem> iterator = iterators.get(top);
+
+			if (iterator.hasNext()) {
+				writeItem(jsonWriter, iterator.next(), iterators);
+			} else {
+				iterators.remove(top);
+				jsonWriter.endArray();
+				jsonWriter.endObject();
+			}
+		}
+	}
+
+	// Reads the fields of an item up to the start of its related terms, returning true when it stops there.
+	private boolean readFields(JsonReader jsonReader, TaxonomyItem taxonomyItem) throws IOException {
+		while (jsonReader.hasNext()) {
+			String field = jsonReader.nextName();
+
+			if (jsonReader.peek() == JsonToken.NULL) {
+				jsonReader.nextNull();
+			} else if (NAME.equals(field)) {
+				taxonomyItem.setName(deduplicator.deduplicate(readString(jsonReader)));
+			} else if (UID.equals(field)) {
+				taxonomyItem.setUid(readString(jsonReader));
+			} else if (VOCAB_NAME.equals(field)) {
+				taxonomyItem.setTaxonomyName(deduplicator.deduplicate(readString(jsonReader)));
+			} else if (RELATED_TERMS.equals(field)) {
+				jsonReader.beginArray();
+				return true;
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		return false;
+	}
+
+	// Accepts the same tokens as Gson's own String adapter.
+	private static String readString(JsonReader jsonReader) throws IOException {
+		if (jsonReader.peek() == JsonToken.BOOLEAN) {
+			return Boolean.toString(jsonReader.nextBoolean());
+		}
+		return jsonReader.nextString();
+	}
+
+	private static void startItem(JsonReader jsonReader, ArrayList<TaxonomyItem> openItems, ArrayList<ArrayList<TaxonomyItem>> openRelatedTerms, int depth) throws IOException {
+		jsonReader.beginObject();
+		if (depth == openItems.size()) {
+			openItems.add(null);
+			openRelatedTerms.add(new ArrayList<TaxonomyItem>());
+		}
+		openItems.set(depth, new TaxonomyItem());
+	}
+
+	// Writes the item's fields and, when it has related terms, leaves its object and related terms array open.
+	private static void writeItem(JsonWriter jsonWriter, TaxonomyItem taxonomyItem, ArrayList<Iterator<TaxonomyItem>> iterators) throws IOException {
+		if (taxonomyItem == null) {
+			jsonWriter.nullValue();
+			return;
+		}
+
+		jsonWriter.beginObject();
+		jsonWriter.name(NAME).value(taxonomyItem.getName());
+		jsonWriter.name(UID).value(taxonomyItem.getUid());
+		jsonWriter.name(VOCAB_NAME).value(taxonomyItem.getTaxonomyName());
+
+		if (taxonomyItem.hasRelatedTerms()) {
+			jsonWriter.name(RELATED_TERMS).beginArray();
+			iterators.add(taxonomyItem.getRelatedTerms().iterator());
+		} else {
+			jsonWriter.endObject();
+		}
+	}
+
+}
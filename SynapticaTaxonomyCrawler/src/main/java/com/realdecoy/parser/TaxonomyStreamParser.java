@@ -0,0 +1,191 @@
+package com.realdecoy.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.realdecoy.model.TaxonomyItem;
+
+/**
+ * Reads a Synaptica hierarchical saved report token by token and hands each
+ * taxonomy item to a {@link TaxonomyItemHandler} as soon as it is known, so the
+ * full report is never held in memory.
+ */
+public class TaxonomyStreamParser {
+
+	private static final String NAME = "Name";
+	private static final String RELATED_TERMS = "RelatedTerms";
+	private static final String UID = "Uid";
+	private static final String VOCAB_NAME = "VocabName";
+
+	private final TaxonomyItemHandler handler;
+	private int itemCount = 0;
+	private int maxDepth = 0;
+
+	public TaxonomyStreamParser(TaxonomyItemHandler handler) {
+		this.handler = handler;
+	}
+
+	public int parse(Reader reader) throws IOException {
+		JsonReader jsonReader = new JsonReader(reader);
+
+		if (jsonReader.peek() == JsonToken.NULL) {
+			jsonReader.nextNull();
+			return itemCount;
+		}
+
+		// Items that are still open, one per depth, kept here rather than on the call stack so deep
+		// taxonomies cannot overflow it.
+		ArrayList<OpenItem> openItems = new ArrayList<>();
+		int depth = 0;
+
+		jsonReader.beginArray();
+		while (true) {
+			OpenItem openItem;
+
+			if (jsonReader.hasNext()) {
+				if (depth == openItems.size()) {
+					openItems.add(new OpenItem());
+				}
+				openItem = openItems.get(depth);
+				OpenItem parent = depth == 0 ? null : openItems.get(depth - 1);
+				openItem.start(parent);
+				jsonReader.beginObject();
+			} else {
+				jsonReader.endArray();
+				if (depth == 0) {
+					break;
+				}
+				// Back in the object whose related terms have just been read.
+				depth--;
+				openItem = openItems.get(depth);
+			}
+
+			if (readFields(jsonReader, openItem, depth)) {
+				depth++;
+			} else {
+				jsonReader.endObject();
+				endItem(openItem, depth);
+			}
+		}
+
+		return itemCount;
+	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	// Reads the fields of an item up to the start of its related terms, returning true when it stops there.
+	private boolean readFields(JsonReader jsonReader, OpenItem openItem, int depth) throws IOException {
+		TaxonomyItem taxonomyItem = openItem.taxonomyItem;
+
+		while (jsonReader.hasNext()) {
+			String field = jsonReader.nextName();
+
+			if (jsonReader.peek() == JsonToken.NULL) {
+				jsonReader.nextNull();
+			} else if (NAME.equals(field)) {
+				taxonomyItem.setName(jsonReader.nextString());
+			} else if (UID.equals(field)) {
+				taxonomyItem.setUid(jsonReader.nextString());
+			} else if (VOCAB_NAME.equals(field)) {
+				taxonomyItem.setTaxonomyName(jsonReader.nextString());
+			} else if (RELATED_TERMS.equals(field)) {
+				if (!openItem.handled && !openItem.buffered && taxonomyItem.getName() != null && taxonomyItem.getUid() != null) {
+					emit(taxonomyItem, depth, openItem.getParentItem());
+					openItem.handled = true;
+				}
+				jsonReader.beginArray();
+				return true;
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		return false;
+	}
+
+	private void endItem(OpenItem openItem, int depth) throws IOException {
+		if (!openItem.handled && !openItem.buffered) {
+			emit(openItem.taxonomyItem, depth, openItem.getParentItem());
+			emitRelatedTerms(openItem.taxonomyItem, depth);
+		}
+		openItem.taxonomyItem = null;
+	}
+
+	private void emit(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) throws IOException {
+		itemCount++;
+		if (depth > maxDepth) {
+			maxDepth = depth;
+		}
+		handler.handle(taxonomyItem, depth, parent);
+	}
+
+	// Emits a buffered subtree below an item that has just been emitted.
+	private void emitRelatedTerms(TaxonomyItem taxonomyItem, int depth) throws IOException {
+		ArrayList<Iterator<TaxonomyItem>> iterators = new ArrayList<>();
+		ArrayList<TaxonomyItem> parents = new ArrayList<>();
+		if (taxonomyItem.hasRelatedTerms()) {
+			iterators.add(taxonomyItem.getRelatedTerms().iterator());
+			parents.add(taxonomyItem);
+		}
+
+		while (!iterators.isEmpty()) {
+			int top = iterators.size() - 1;
+			Iterator<TaxonomyItem> iterator = iterators.get(top);
+
+			if (!iterator.hasNext()) {
+				// Release the buffered subtree once it has been handed on.
+				parents.remove(top).setRelatedTerms(null);
+				iterators.remove(top);
+				continue;
+			}
+
+			TaxonomyItem relatedTerm = iterator.next();
+			emit(relatedTerm, depth + top + 1, parents.get(top));
+			if (relatedTerm.hasRelatedTerms()) {
+				iterators.add(relatedTerm.getRelatedTerms().iterator());
+				parents.add(relatedTerm);
+			}
+		}
+		taxonomyItem.setRelatedTerms(null);
+	}
+
+	private static class OpenItem {
+
+		// Set when an item has to wait for its parent, it is then held in the parent's related terms.
+		private boolean buffered;
+		private boolean handled;
+		private OpenItem parent;
+		private TaxonomyItem taxonomyItem;
+
+		void start(OpenItem parent) {
+			this.parent = parent;
+			this.taxonomyItem = new TaxonomyItem();
+			this.handled = false;
+			// The related terms arrived before the fields the handler needs, so this subtree has to be buffered.
+			this.buffered = parent != null && !parent.handled;
+
+			if (buffered) {
+				TaxonomyItem parentItem = parent.taxonomyItem;
+				if (parentItem.getRelatedTerms() == null) {
+					parentItem.setRelatedTerms(new ArrayList<TaxonomyItem>());
+				}
+				parentItem.getRelatedTerms().add(taxonomyItem);
+			}
+		}
+
+		TaxonomyItem getParentItem() {
+			return parent == null ? null : parent.taxonomyItem;
+		}
+
+	}
+
+}
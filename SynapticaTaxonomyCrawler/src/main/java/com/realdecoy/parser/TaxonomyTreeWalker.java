@@ -0,0 +1,108 @@
+package com.realdecoy.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.realdecoy.model.CompactTaxonomy;
+import com.realdecoy.model.TaxonomyItem;
+
+/**
+ * Visits a parsed taxonomy depth first, in the same order the streaming
+ * parser emits items. The walks keep their own stack rather than recursing, so
+ * the depth of a taxonomy is not limited by the thread's stack size.
+ */
+public class TaxonomyTreeWalker {
+
+	private TaxonomyTreeWalker() {
+	}
+
+	public static void walk(List<TaxonomyItem> taxonomyItems, TaxonomyItemHandler handler, TaxonomyItem parent, int depth) throws IOException {
+		ArrayList<Iterator<TaxonomyItem>> iterators = new ArrayList<>();
+		ArrayList<TaxonomyItem> parents = new ArrayList<>();
+		iterators.add(taxonomyItems.iterator());
+		parents.add(parent);
+
+		while (!iterators.isEmpty()) {
+			int top = iterators.size() - 1;
+			Iterator<TaxonomyItem> iterator = iterators.get(top);
+
+			if (!iterator.hasNext()) {
+				iterators.remove(top);
+				parents.remove(top);
+				continue;
+			}
+
+			// Process data for the current taxonomy item
+			TaxonomyItem taxonomyItem = iterator.next();
+			handler.handle(taxonomyItem, depth + top, parents.get(top));
+
+			if (taxonomyItem.hasRelatedTerms()) {
+				// Process the list of related terms before the next sibling.
+				iterators.add(taxonomyItem.getRelatedTerms().iterator());
+				parents.add(taxonomyItem);
+			}
+		}
+	}
+
+	// Walks the whole taxonomy, top-level terms are passed a depth of 0.
+	public static void walk(CompactTaxonomy taxonomy, TaxonomyItemHandler handler) throws IOException {
+		for (int term = taxonomy.size() == 0 ? CompactTaxonomy.NONE : 0; term != CompactTaxonomy.NONE; term = taxonomy.getNextSibling(term)) {
+			walk(taxonomy, term, handler);
+		}
+	}
+
+	// Walks the subtree rooted at the term, which is passed a depth of 0 and no parent. The handler is given one
+	// reused item per depth, filled in from the taxonomy, so it must not hold on to the items.
+	public static void walk(CompactTaxonomy taxonomy, int root, TaxonomyItemHandler handler) throws IOException {
+		ArrayList<TaxonomyItem> items = new ArrayList<>();
+		int term = root;
+		int depth = 0;
+
+		while (true) {
+			if (depth == items.size()) {
+				items.add(new TaxonomyItem());
+			}
+			TaxonomyItem taxonomyItem = items.get(depth);
+			taxonomyItem.setName(taxonomy.getName(term));
+			taxonomyItem.setUid(taxonomy.getUid(term));
+			taxonomyItem.setTaxonomyName(taxonomy.getTaxonomyName(term));
+			taxonomyItem.setGeneratedUid(taxonomy.getGeneratedUid(term));
+			handler.handle(taxonomyItem, depth, depth == 0 ? null : items.get(depth - 1));
+
+			if (taxonomy.getFirstChild(term) != CompactTaxonomy.NONE) {
+				term = taxonomy.getFirstChild(term);
+				depth++;
+				continue;
+			}
+
+			// Climb back up until a term with a next sibling is found, stopping at the root.
+			while (term != root && taxonomy.getNextSibling(term) == CompactTaxonomy.NONE) {
+				term = taxonomy.getParent(term);
+				depth--;
+			}
+			if (term == root) {
+				return;
+			}
+			term = taxonomy.getNextSibling(term);
+		}
+	}
+
+	// Number of items in the subtree rooted at the item, the item included.
+	public static int countItems(TaxonomyItem taxonomyItem) {
+		ArrayList<TaxonomyItem> pending = new ArrayList<>();
+		pending.add(taxonomyItem);
+		int count = 0;
+
+		while (!pending.isEmpty()) {
+			TaxonomyItem item = pending.remove(pending.size() - 1);
+			count++;
+			if (item.hasRelatedTerms()) {
+				pending.addAll(item.getRelatedTerms());
+			}
+		}
+		return count;
+	}
+
+}
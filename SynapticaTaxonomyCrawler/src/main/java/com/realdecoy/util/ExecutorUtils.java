@@ -0,0 +1,49 @@
+package com.realdecoy.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorUtils {
+
+	// Returns a fixed size pool backed by virtual threads when the running JVM supports them.
+	public static final ExecutorService newBoundedExecutor(int threads, String threadName) {
+		ThreadFactory threadFactory = getVirtualThreadFactory(threadName);
+
+		if (threadFactory == null) {
+			threadFactory = getPlatformThreadFactory(threadName);
+		}
+
+		return Executors.newFixedThreadPool(threads, threadFactory);
+	}
+
+	private static ThreadFactory getPlatformThreadFactory(final String threadName) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, threadName + "-" + count.getAndIncrement());
+			}
+		};
+	}
+
+	// Thread.ofVirtual() only exists from Java 21 onwards, so it is looked up reflectively.
+	private static ThreadFactory getVirtualThreadFactory(String threadName) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, threadName + "-", 1L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// Preview builds expose the API but refuse to use it unless enabled.
+			return null;
+		}
+	}
+
+}
@@ -1,13 +1,46 @@
 package com.realdecoy.util;
 
+import java.io.IOException;
+
 public class IdUtil {
 	
-	private int id = 1;
+	private int id;
+	private final OccurrenceKeys occurrenceKeys = new OccurrenceKeys();
+	private final StableIdStore store;
+
+	public IdUtil() {
+		this(1);
+	}
+
+	// Counts ids up from firstId, used when part of a taxonomy is numbered separately from the rest.
+	public IdUtil(int firstId) {
+		this.id = firstId;
+		this.store = null;
+	}
+
+	// With a store, ids are looked up by Synaptica Uid so they stay the same from one run to the next.
+	public IdUtil(StableIdStore store) {
+		this.id = 1;
+		this.store = store;
+	}
 	
 	public String getId() {
 		int id = this.id;
 		this.id += 1;
 		return String.valueOf(id); 
 	}
+
+	// The parent id is the generated id of the parent, null for a term at the top of the taxonomy.
+	public String getId(String uid, String parentUid, String parentId) throws IOException {
+		if (store == null) {
+			return getId();
+		}
+
+		// A term that appears under more than one parent needs an id per occurrence, see OccurrenceKeys.
+		String key = occurrenceKeys.getKey(uid, parentUid, parentId);
+		String id = String.valueOf(key == null ? store.allocate() : store.getOrAllocate(key));
+		occurrenceKeys.setId(uid, key, id);
+		return id;
+	}
 	
 }
@@ -0,0 +1,53 @@
+package com.realdecoy.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Works out the key that identifies each occurrence of a term from one run to
+ * the next, shared by the id store and the delta snapshot. The first
+ * occurrence of a Uid is keyed by the Uid alone, so a term keeps its key when
+ * it moves. A term that appears again under another parent is keyed by its
+ * parent's key and its Uid, which stays unique when the parent repeats too.
+ *
+ * Terms are to be visited parents first, in the same order every run, and each
+ * given its generated id with {@link #setId(String, String, String)} before its
+ * children are visited.
+ */
+public class OccurrenceKeys {
+
+	private static final String SEPARATOR = ">";
+
+	// Keys of repeated occurrences by generated id, null for one that has no key. Any other key is its Uid.
+	private final HashMap<String, String> repeatKeys = new HashMap<>();
+	private final HashSet<String> seenUids = new HashSet<>();
+
+	// Returns null when the occurrence has no identity, it has no Uid or it repeats under a parent that has no key.
+	// The parent id is null for a term at the top of the taxonomy.
+	public String getKey(String uid, String parentUid, String parentId) {
+		if (uid == null) {
+			return null;
+		}
+		if (seenUids.add(uid)) {
+			return uid;
+		}
+
+		String parentKey;
+		if (parentId == null) {
+			parentKey = "";
+		} else if (repeatKeys.containsKey(parentId)) {
+			parentKey = repeatKeys.get(parentId);
+		} else {
+			parentKey = parentUid;
+		}
+		return parentKey == null ? null : parentKey + SEPARATOR + uid;
+	}
+
+	// Records the generated id of an occurrence, so its children can be keyed by it.
+	public void setId(String uid, String key, String id) {
+		if (uid != null && !uid.equals(key)) {
+			repeatKeys.put(id, key);
+		}
+	}
+
+}
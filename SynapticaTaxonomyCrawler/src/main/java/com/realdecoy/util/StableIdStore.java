@@ -0,0 +1,367 @@
+package com.realdecoy.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Persistent map of Synaptica Uids to generated ids. Assignments are appended
+ * to a log file that is never rewritten, and looked up through an open
+ * addressing hash index held in a memory mapped file next to it.
+ *
+ * The index can always be rebuilt from the log. It is marked dirty while the
+ * store is open, so a run that dies before {@link #close()} simply causes a
+ * rebuild on the next open. Ids allocated without a key are recorded in the
+ * log on close as a record with no key holding the highest id handed out, so
+ * a rebuilt index never hands them out again.
+ */
+public class StableIdStore implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long DIRTY = -1L;
+	private static final int INDEX_HEADER_SIZE = 32;
+	private static final int INDEX_MAGIC = 0x53494458;
+	private static final int INITIAL_CAPACITY = 1 << 12;
+	private static final int LOG_HEADER_SIZE = 8;
+	private static final int LOG_MAGIC = 0x5349444C;
+	private static final float MAX_LOAD_FACTOR = 0.7f;
+	// Key length of the record that holds the highest id allocated without a key.
+	private static final int NO_KEY = -1;
+	private static final int SLOT_SIZE = 16;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int VERSION = 1;
+
+	private int capacity;
+	private MappedByteBuffer index;
+	private final FileChannel indexChannel;
+	private final FileChannel logChannel;
+	// Length of the log that has reached the file, appended records wait in pendingRecords until flushed.
+	private long flushedLength;
+	private int nextId;
+	private final ByteBuffer pendingRecords = ByteBuffer.allocate(BUFFER_SIZE);
+	private int size;
+	// Set once an id has been allocated without a key and not yet recorded in the log.
+	private boolean unkeyedIdsPending;
+
+	private StableIdStore(FileChannel logChannel, FileChannel indexChannel) {
+		this.logChannel = logChannel;
+		this.indexChannel = indexChannel;
+	}
+
+	public static StableIdStore open(File logFile, File indexFile) throws IOException {
+		FileChannel logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		FileChannel indexChannel = null;
+
+		try {
+			indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			StableIdStore store = new StableIdStore(logChannel, indexChannel);
+			store.load();
+			return store;
+		} catch (IOException e) {
+			logChannel.close();
+			if (indexChannel != null) {
+				indexChannel.close();
+			}
+			throw e;
+		}
+	}
+
+	// Returns the id recorded for the key, allocating and recording the next free id when there is none.
+	public int getOrAllocate(String key) throws IOException {
+		byte[] keyBytes = key.getBytes(UTF_8);
+		int hash = hash(keyBytes);
+		int mask = capacity - 1;
+
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			int position = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+			long offset = index.getLong(position + 8);
+
+			if (offset == 0) {
+				break;
+			}
+			if (index.getInt(position) == hash && keyEquals(offset, keyBytes)) {
+				return index.getInt(position + 4);
+			}
+		}
+
+		int id = nextId++;
+		long offset = append(keyBytes, id);
+		insert(hash, id, offset);
+		return id;
+	}
+
+	// Allocates an id that is not tied to any key, for terms that have no Uid.
+	public int allocate() {
+		unkeyedIdsPending = true;
+		return nextId++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (unkeyedIdsPending) {
+				appendHighestId();
+			}
+			flush();
+			logChannel.force(false);
+			writeIndexHeader(flushedLength);
+			index.force();
+		} finally {
+			logChannel.close();
+			indexChannel.close();
+		}
+	}
+
+	private long append(byte[] keyBytes, int id) throws IOException {
+		int recordSize = 4 + keyBytes.length + 4;
+
+		if (recordSize > pendingRecords.remaining()) {
+			flush();
+		}
+
+		long offset = flushedLength + pendingRecords.position();
+
+		if (recordSize > pendingRecords.capacity()) {
+			ByteBuffer record = ByteBuffer.allocate(recordSize);
+			record.putInt(keyBytes.length).put(keyBytes).putInt(id).flip();
+			writeFully(record, flushedLength);
+			flushedLength += recordSize;
+		} else {
+			pendingRecords.putInt(keyBytes.length).put(keyBytes).putInt(id);
+		}
+
+		return offset;
+	}
+
+	private void appendHighestId() throws IOException {
+		if (pendingRecords.remaining() < 8) {
+			flush();
+		}
+		pendingRecords.putInt(NO_KEY).putInt(nextId - 1);
+		unkeyedIdsPending = false;
+	}
+
+	private void flush() throws IOException {
+		pendingRecords.flip();
+		int length = pendingRecords.remaining();
+		writeFully(pendingRecords, flushedLength);
+		flushedLength += length;
+		pendingRecords.clear();
+	}
+
+	private static int hash(byte[] keyBytes) {
+		int hash = Arrays.hashCode(keyBytes);
+		// Spread the low bits, the table is indexed with a power of two mask.
+		hash ^= (hash >>> 16);
+		hash *= 0x85EBCA6B;
+		hash ^= (hash >>> 13);
+		return hash;
+	}
+
+	private void insert(int hash, int id, long offset) throws IOException {
+		if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+			resize(capacity * 2);
+		}
+
+		int mask = capacity - 1;
+		int slot = hash & mask;
+		while (index.getLong(INDEX_HEADER_SIZE + slot * SLOT_SIZE + 8) != 0) {
+			slot = (slot + 1) & mask;
+		}
+
+		int position = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+		index.putInt(position, hash);
+		index.putInt(position + 4, id);
+		index.putLong(position + 8, offset);
+		size++;
+	}
+
+	private boolean keyEquals(long offset, byte[] keyBytes) throws IOException {
+		ByteBuffer record = read(offset, 4 + keyBytes.length);
+		if (record.getInt() != keyBytes.length) {
+			return false;
+		}
+		for (int i = 0; i < keyBytes.length; i++) {
+			if (record.get() != keyBytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void load() throws IOException {
+		long logLength = logChannel.size();
+
+		if (logLength < LOG_HEADER_SIZE) {
+			ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+			header.putInt(LOG_MAGIC).putInt(VERSION).flip();
+			logChannel.truncate(0);
+			writeFully(header, 0);
+			logLength = LOG_HEADER_SIZE;
+		} else {
+			flushedLength = logLength;
+			ByteBuffer header = read(0, LOG_HEADER_SIZE);
+			if (header.getInt() != LOG_MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Unrecognised id store log format.");
+			}
+		}
+		flushedLength = logLength;
+
+		if (!loadIndex(logLength)) {
+			rebuildIndex();
+		}
+
+		// Anything appended from here on is only trusted once close() has written the header again.
+		writeIndexHeader(DIRTY);
+	}
+
+	private boolean loadIndex(long logLength) throws IOException {
+		if (indexChannel.size() < INDEX_HEADER_SIZE) {
+			return false;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+		indexChannel.read(header, 0);
+		header.flip();
+
+		if (header.getInt() != INDEX_MAGIC) {
+			return false;
+		}
+		int storedCapacity = header.getInt();
+		int storedSize = header.getInt();
+		int storedNextId = header.getInt();
+		long storedLogLength = header.getLong();
+
+		if (storedLogLength != logLength || Integer.bitCount(storedCapacity) != 1 || indexChannel.size() < INDEX_HEADER_SIZE + (long) storedCapacity * SLOT_SIZE) {
+			return false;
+		}
+
+		capacity = storedCapacity;
+		size = storedSize;
+		nextId = storedNextId;
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE);
+		return true;
+	}
+
+	private ByteBuffer read(long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		if (offset >= flushedLength) {
+			// The record is still waiting in the append buffer.
+			ByteBuffer pending = pendingRecords.duplicate();
+			pending.flip();
+			pending.position((int) (offset - flushedLength));
+			pending.limit(Math.min(pending.limit(), pending.position() + length));
+			buffer.put(pending);
+		} else {
+			while (buffer.hasRemaining() && logChannel.read(buffer, offset + buffer.position()) >= 0) {
+				// Keep reading until the record is complete or the log ends.
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	private void rebuildIndex() throws IOException {
+		capacity = INITIAL_CAPACITY;
+		size = 0;
+		nextId = 1;
+		index = mapIndex(capacity);
+
+		long position = LOG_HEADER_SIZE;
+		long logLength = logChannel.size();
+		// Not closed, closing the stream would close the log channel with it.
+		DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(logChannel.position(position)), BUFFER_SIZE));
+
+		while (position + 8 <= logLength) {
+			int keyLength = input.readInt();
+			if (keyLength == NO_KEY) {
+				nextId = Math.max(nextId, input.readInt() + 1);
+				position += 8;
+				continue;
+			}
+			if (keyLength < 0 || position + 8 + keyLength > logLength) {
+				break;
+			}
+
+			byte[] keyBytes = new byte[keyLength];
+			input.readFully(keyBytes);
+			int id = input.readInt();
+
+			insert(hash(keyBytes), id, position);
+			nextId = Math.max(nextId, id + 1);
+			position += 8 + keyLength;
+		}
+
+		if (position < logLength) {
+			// A run died half way through appending a record, drop the partial record.
+			logChannel.truncate(position);
+		}
+		flushedLength = position;
+	}
+
+	private void resize(int newCapacity) throws IOException {
+		int[] hashes = new int[size];
+		int[] ids = new int[size];
+		long[] offsets = new long[size];
+		int count = 0;
+
+		for (int slot = 0; slot < capacity; slot++) {
+			int position = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+			long offset = index.getLong(position + 8);
+			if (offset != 0) {
+				hashes[count] = index.getInt(position);
+				ids[count] = index.getInt(position + 4);
+				offsets[count] = offset;
+				count++;
+			}
+		}
+
+		capacity = newCapacity;
+		size = 0;
+		index = mapIndex(capacity);
+
+		for (int i = 0; i < count; i++) {
+			insert(hashes[i], ids[i], offsets[i]);
+		}
+	}
+
+	private MappedByteBuffer mapIndex(int capacity) throws IOException {
+		long length = INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE;
+		MappedByteBuffer buffer = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+
+		for (int position = 0; position < length; position += 8) {
+			buffer.putLong(position, 0L);
+		}
+		return buffer;
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += logChannel.write(buffer, position);
+		}
+	}
+
+	private void writeIndexHeader(long logLength) {
+		index.putInt(0, INDEX_MAGIC);
+		index.putInt(4, capacity);
+		index.putInt(8, size);
+		index.putInt(12, nextId);
+		index.putLong(16, logLength);
+	}
+
+}
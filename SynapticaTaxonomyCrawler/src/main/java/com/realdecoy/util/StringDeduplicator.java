@@ -0,0 +1,38 @@
+package com.realdecoy.util;
+
+/**
+ * Fixed size, direct mapped table of recently seen strings, used to share one
+ * instance of values that repeat throughout a report. A string only replaces
+ * the one in its slot, so the table never grows however many distinct values
+ * pass through it, at the cost of missing some repeats.
+ */
+public class StringDeduplicator {
+
+	private final int mask;
+	private final String[] table;
+
+	// The capacity is rounded up to a power of two.
+	public StringDeduplicator(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.table = new String[size];
+		this.mask = size - 1;
+	}
+
+	// Returns the instance already held for an equal string, or holds on to this one and returns it.
+	public String deduplicate(String value) {
+		if (value == null) {
+			return null;
+		}
+
+		int hash = value.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		String cached = table[slot];
+
+		if (value.equals(cached)) {
+			return cached;
+		}
+		table[slot] = value;
+		return value;
+	}
+
+}
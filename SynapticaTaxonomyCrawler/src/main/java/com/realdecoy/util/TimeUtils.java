@@ -1,26 +1,62 @@
 package com.realdecoy.util;
 
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
 import java.util.logging.Logger;
 
 public class TimeUtils {
 
 	public static final void displayElapsedTime(long startTime, long endTime, Logger logger) {
+		logger.info("Elapsed time: " + formatElapsedTime(endTime - startTime) + ".");
+	}
 
-		long elapsedTime = (((endTime - startTime) / 1000) / 60);
+	// Minutes are kept whole and the remainder shown to the millisecond, so 119 seconds is not reported as 1 minute.
+	public static final String formatElapsedTime(long elapsedMillis) {
+		if (elapsedMillis < 1000) {
+			return elapsedMillis + " millisecond(s)";
+		}
 
-		if (elapsedTime == 0) {
-			elapsedTime = ((endTime - startTime) / 1000);
+		long minutes = elapsedMillis / 60000;
+		String seconds = String.format(Locale.ROOT, "%d.%03d second(s)", (elapsedMillis % 60000) / 1000, elapsedMillis % 1000);
+		return minutes == 0 ? seconds : minutes + " minute(s) " + seconds;
+	}
 
-			if (elapsedTime == 0) {
-				elapsedTime = (endTime - startTime);
-				logger.info("Elapsed time: " + elapsedTime + " millisecond(s).");
+	// Accepts a number with an s, m, h or d suffix, or an ISO-8601 duration such as PT15M.
+	public static final Duration parseDuration(String value) {
+		String trimmed = value.trim();
+		Duration duration;
+
+		try {
+			if (trimmed.toUpperCase(Locale.ROOT).startsWith("P")) {
+				duration = Duration.parse(trimmed);
 			} else {
-				logger.info("Elapsed time: " + elapsedTime + " second(s).");
+				long amount = Long.parseLong(trimmed.substring(0, trimmed.length() - 1));
+				switch (Character.toLowerCase(trimmed.charAt(trimmed.length() - 1))) {
+				case 's':
+					duration = Duration.ofSeconds(amount);
+					break;
+				case 'm':
+					duration = Duration.ofMinutes(amount);
+					break;
+				case 'h':
+					duration = Duration.ofHours(amount);
+					break;
+				case 'd':
+					duration = Duration.ofDays(amount);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown duration unit in: " + value + ".");
+				}
 			}
+		} catch (NumberFormatException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Invalid duration: " + value + ".", e);
+		}
 
-		} else {
-			logger.info("Elapsed time: " + elapsedTime + " minute(s).");
+		if (duration.isNegative() || duration.isZero()) {
+			throw new IllegalArgumentException("Duration must be positive: " + value + ".");
 		}
+		return duration;
 	}
 
 }
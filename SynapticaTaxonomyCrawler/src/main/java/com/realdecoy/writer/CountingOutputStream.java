@@ -0,0 +1,40 @@
+package com.realdecoy.writer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written through it. Flushes are not passed on: the stream
+ * writer is flushed at every indexed node to read its offset, and the file
+ * underneath is flushed once when the dimension is finished.
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+	private long count = 0;
+
+	CountingOutputStream(OutputStream outputStream) {
+		super(outputStream);
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] buffer, int offset, int length) throws IOException {
+		out.write(buffer, offset, length);
+		count += length;
+	}
+
+	@Override
+	public void flush() {
+	}
+
+}
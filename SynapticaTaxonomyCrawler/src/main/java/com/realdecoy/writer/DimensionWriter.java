@@ -0,0 +1,19 @@
+package com.realdecoy.writer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.realdecoy.model.TaxonomyItem;
+
+public interface DimensionWriter extends Closeable {
+
+	void writeRoot(String dimensionName) throws IOException;
+
+	// uniquePath is the complete comma separated path of the node, ending with its own generated id. It is
+	// reused for the next node, so writers must not hold on to it.
+	void writeNode(TaxonomyItem taxonomyItem, String directParent, UniquePath uniquePath) throws IOException;
+
+	// Completes the external_dimensions document. Closing without finishing leaves the output incomplete.
+	void finish() throws IOException;
+
+}
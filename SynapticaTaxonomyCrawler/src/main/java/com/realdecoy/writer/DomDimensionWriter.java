@@ -0,0 +1,111 @@
+package com.realdecoy.writer;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.realdecoy.model.TaxonomyItem;
+
+/**
+ * Builds the complete dimension as a DOM document and serializes it with a
+ * Transformer once every node has been added.
+ */
+public class DomDimensionWriter implements DimensionWriter {
+
+	private final Document document;
+	private final Element externalDimensions;
+	private final boolean indent;
+	private final File outputFile;
+
+	public DomDimensionWriter(File outputFile, boolean indent) throws IOException {
+		this.outputFile = outputFile;
+		this.indent = indent;
+
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			document = builder.newDocument();
+		} catch (ParserConfigurationException e) {
+			throw new IOException("Failed to create dimension document.", e);
+		}
+
+		externalDimensions = document.createElement("external_dimensions");
+		document.appendChild(externalDimensions);
+	}
+
+	@Override
+	public void writeRoot(String dimensionName) {
+		Element root = document.createElement("node");
+		root.setAttribute("id", dimensionName);
+		root.setAttribute("name", dimensionName);
+		externalDimensions.appendChild(root);
+	}
+
+	@Override
+	public void writeNode(TaxonomyItem taxonomyItem, String directParent, UniquePath uniquePath) {
+		Element node = document.createElement("node");
+		Element synonym = document.createElement("synonym");
+		Element property = document.createElement("property");
+		//Set the Synaptica ID Term
+		Element propertySyn = document.createElement("property");
+
+		node.setAttribute("parent", directParent);
+		node.setAttribute("classify", "false");
+		node.setAttribute("search", "true");
+
+		// Change to generated ID in future
+		// node.setAttribute("id", taxonomyItem.getUid());
+		node.setAttribute("id", taxonomyItem.getGeneratedUid());
+
+		node.setAttribute("name", taxonomyItem.getName());
+
+		synonym.setAttribute("search", "false");
+		synonym.setAttribute("name", taxonomyItem.getUid());
+		synonym.setAttribute("classify", "true");
+
+		property.setAttribute("name", "UNIQUE_PATH");
+		property.setTextContent(uniquePath.toString());
+
+		propertySyn.setAttribute("name", "SID");
+		propertySyn.setTextContent(taxonomyItem.getUid());
+
+		node.appendChild(synonym);
+		node.appendChild(property);
+		node.appendChild(propertySyn);
+
+		externalDimensions.appendChild(node);
+	}
+
+	@Override
+	public void finish() throws IOException {
+		try {
+			TransformerFactory transformerFactory = TransformerFactory.newInstance();
+			Transformer transformer = transformerFactory.newTransformer();
+			transformer.setOutputProperty(OutputKeys.INDENT, indent ? "yes" : "no");
+			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+			DOMSource source = new DOMSource(document);
+			StreamResult result = new StreamResult(outputFile);
+			transformer.transform(source, result);
+		} catch (TransformerException e) {
+			throw new IOException("Failed to write dimension file: " + outputFile.getName() + ".", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		// Nothing is held open, the Transformer closes the output file itself.
+	}
+
+}
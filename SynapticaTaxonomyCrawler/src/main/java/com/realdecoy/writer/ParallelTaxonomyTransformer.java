@@ -0,0 +1,196 @@
+package com.realdecoy.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.realdecoy.index.DimensionIndexWriter;
+import com.realdecoy.model.CompactTaxonomy;
+import com.realdecoy.model.TaxonomyItem;
+import com.realdecoy.parser.TaxonomyItemHandler;
+import com.realdecoy.parser.TaxonomyTreeWalker;
+import com.realdecoy.util.IdUtil;
+import com.realdecoy.util.StableIdStore;
+
+/**
+ * Renders each top-level branch of a parsed taxonomy to its own buffer on a
+ * fork/join pool, then appends the buffers to the dimension file in their
+ * original order. Nodes are written as a flat list, so the result is byte for
+ * byte what a sequential walk writes as long as every node gets the same id.
+ *
+ * Without an id store ids are simply counted in walk order, so each branch
+ * starts counting where the branches before it end. An id store hands out ids
+ * as it meets new Uids and is not thread safe, so ids are assigned up front in
+ * a sequential pass instead.
+ */
+public class ParallelTaxonomyTransformer {
+
+	private static final String PARALLELISM_PROPERTY = "crawler.transformThreads";
+
+	// Shared by every dimension job, sharded writes included, so concurrent jobs divide the cores between them.
+	static class PoolHolder {
+		static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors())));
+	}
+
+	private final String dimensionName;
+	private final StableIdStore idStore;
+	private int maxDepth = 0;
+
+	public ParallelTaxonomyTransformer(String dimensionName, StableIdStore idStore) {
+		this.dimensionName = dimensionName;
+		this.idStore = idStore;
+	}
+
+	// Writes every item to the writer and returns the number of items written.
+	public int transform(List<TaxonomyItem> taxonomyItems, StaxDimensionWriter writer) throws IOException {
+		boolean idsAssigned = idStore != null;
+		if (idsAssigned) {
+			assignIds(taxonomyItems, idStore);
+		}
+
+		ArrayList<BranchTask> tasks = new ArrayList<>(taxonomyItems.size());
+		int firstId = 1;
+		for (TaxonomyItem taxonomyItem : taxonomyItems) {
+			tasks.add(new BranchTask(taxonomyItem, null, 0, writer, idsAssigned ? null : new IdUtil(firstId)));
+			firstId += TaxonomyTreeWalker.countItems(taxonomyItem);
+		}
+
+		return runBranches(tasks, writer);
+	}
+
+	// Terms of a compact taxonomy are numbered in walk order, so each branch's first id is simply its root's number plus one.
+	public int transform(CompactTaxonomy taxonomy, StaxDimensionWriter writer) throws IOException {
+		boolean idsAssigned = idStore != null;
+		if (idsAssigned) {
+			assignIds(taxonomy, idStore);
+		}
+
+		ArrayList<BranchTask> tasks = new ArrayList<>();
+		for (int root = taxonomy.size() == 0 ? CompactTaxonomy.NONE : 0; root != CompactTaxonomy.NONE; root = taxonomy.getNextSibling(root)) {
+			tasks.add(new BranchTask(null, taxonomy, root, writer, idsAssigned ? null : new IdUtil(root + 1)));
+		}
+
+		return runBranches(tasks, writer);
+	}
+
+	// Deepest level written by the last transform.
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	private int runBranches(List<BranchTask> tasks, StaxDimensionWriter writer) throws IOException {
+		for (BranchTask task : tasks) {
+			PoolHolder.POOL.execute(task);
+		}
+
+		int itemCount = 0;
+		try {
+			// Branches are appended as soon as they and every branch before them are done.
+			for (BranchTask task : tasks) {
+				task.get();
+				writer.writeFragment(task.fragment, task.fragmentIndex);
+				itemCount += task.itemCount;
+				maxDepth = Math.max(maxDepth, task.maxDepth);
+				task.fragment = null;
+				task.fragmentIndex = null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted whilst transforming taxonomy.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw new IOException("Failed to transform taxonomy branch.", cause);
+		} finally {
+			for (BranchTask task : tasks) {
+				task.cancel(false);
+			}
+		}
+
+		return itemCount;
+	}
+
+	static void assignIds(List<TaxonomyItem> taxonomyItems, StableIdStore idStore) throws IOException {
+		final IdUtil idUtil = new IdUtil(idStore);
+
+		TaxonomyTreeWalker.walk(taxonomyItems, new TaxonomyItemHandler() {
+			@Override
+			public void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) throws IOException {
+				taxonomyItem.setGeneratedUid(idUtil.getId(taxonomyItem.getUid(), parent == null ? null : parent.getUid(),
+						parent == null ? null : parent.getGeneratedUid()));
+			}
+		}, null, 0);
+	}
+
+	static void assignIds(CompactTaxonomy taxonomy, StableIdStore idStore) throws IOException {
+		IdUtil idUtil = new IdUtil(idStore);
+
+		for (int term = 0; term < taxonomy.size(); term++) {
+			int parent = taxonomy.getParent(term);
+			boolean top = parent == CompactTaxonomy.NONE;
+			taxonomy.setGeneratedUid(term, idUtil.getId(taxonomy.getUid(term), top ? null : taxonomy.getUid(parent), top ? null : taxonomy.getGeneratedUid(parent)));
+		}
+	}
+
+	private class BranchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private ByteArrayOutputStream fragment;
+		private DimensionIndexWriter fragmentIndex;
+		private final IdUtil idUtil;
+		private int itemCount;
+		private int maxDepth;
+		private final TaxonomyItem taxonomyItem;
+		private final int root;
+		private final CompactTaxonomy taxonomy;
+		private final StaxDimensionWriter writer;
+
+		// A branch is either a parsed item or the subtree of a compact taxonomy rooted at root.
+		BranchTask(TaxonomyItem taxonomyItem, CompactTaxonomy taxonomy, int root, StaxDimensionWriter writer, IdUtil idUtil) {
+			this.taxonomyItem = taxonomyItem;
+			this.taxonomy = taxonomy;
+			this.root = root;
+			this.writer = writer;
+			this.idUtil = idUtil;
+		}
+
+		@Override
+		protected void compute() {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+
+			try {
+				StaxDimensionWriter fragmentWriter = writer.createFragmentWriter(buffer);
+				try {
+					TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(fragmentWriter, dimensionName, idUtil);
+					if (taxonomy == null) {
+						TaxonomyTreeWalker.walk(Collections.singletonList(taxonomyItem), taxonomyItemWriter, null, 0);
+					} else {
+						TaxonomyTreeWalker.walk(taxonomy, root, taxonomyItemWriter);
+					}
+					fragmentWriter.finish();
+					fragmentIndex = fragmentWriter.getIndex();
+					itemCount = taxonomyItemWriter.getItemCount();
+					maxDepth = taxonomyItemWriter.getMaxDepth();
+				} finally {
+					fragmentWriter.close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			fragment = buffer;
+		}
+
+	}
+
+}
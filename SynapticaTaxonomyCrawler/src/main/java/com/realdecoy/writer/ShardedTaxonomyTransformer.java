@@ -0,0 +1,302 @@
+package com.realdecoy.writer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.gson.stream.JsonWriter;
+import com.realdecoy.model.CompactTaxonomy;
+import com.realdecoy.model.TaxonomyItem;
+import com.realdecoy.parser.TaxonomyItemHandler;
+import com.realdecoy.parser.TaxonomyTreeWalker;
+import com.realdecoy.util.IdUtil;
+import com.realdecoy.util.StableIdStore;
+
+/**
+ * Splits a parsed taxonomy into shard files at top-level branch boundaries and
+ * writes the shards at the same time on the transform pool. Every shard is a
+ * complete external_dimensions document with its own copy of the root
+ * dimension node, and together they hold exactly the nodes a single file
+ * would, with the same ids. An indexed shard gets its own index sidecar.
+ *
+ * Shards are planned up front, either as a fixed number of groups holding
+ * about the same number of terms, or as groups whose estimated size stays
+ * under a target. A branch bigger than the target gets a shard of its own. The
+ * set is published by writing its manifest last, so a reader that goes by the
+ * manifest never sees a partial set.
+ */
+public class ShardedTaxonomyTransformer {
+
+	public static final String MANIFEST_FILE_NAME = "manifest.json";
+	// Rough size of the markup around each node's values, used to plan shards by size.
+	private static final int NODE_MARKUP_BYTES = 240;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final String dimensionName;
+	private final StableIdStore idStore;
+	private final boolean indent;
+	private final boolean indexed;
+	private int maxDepth = 0;
+	private final int shardCount;
+	private final long shardSize;
+	private int shardsWritten = 0;
+
+	// Either a number of shards, or with a shardCount of 0 a target size in bytes for each shard.
+	public ShardedTaxonomyTransformer(String dimensionName, StableIdStore idStore, boolean indent, boolean indexed, int shardCount, long shardSize) {
+		this.dimensionName = dimensionName;
+		this.idStore = idStore;
+		this.indent = indent;
+		this.indexed = indexed;
+		this.shardCount = shardCount;
+		this.shardSize = shardSize;
+	}
+
+	// Writes the shards and their manifest into the directory and returns the number of items written.
+	public int transform(List<TaxonomyItem> taxonomyItems, File directory, String fileName) throws IOException {
+		if (idStore != null) {
+			ParallelTaxonomyTransformer.assignIds(taxonomyItems, idStore);
+		}
+
+		BranchSizes branchSizes = new BranchSizes();
+		TaxonomyTreeWalker.walk(taxonomyItems, branchSizes, null, 0);
+
+		List<ShardTask> tasks = plan(branchSizes, directory, fileName);
+		for (ShardTask task : tasks) {
+			task.taxonomyItems = taxonomyItems.subList(task.firstBranch, task.endBranch);
+		}
+		return writeShards(tasks, directory, fileName);
+	}
+
+	public int transform(CompactTaxonomy taxonomy, File directory, String fileName) throws IOException {
+		if (idStore != null) {
+			ParallelTaxonomyTransformer.assignIds(taxonomy, idStore);
+		}
+
+		BranchSizes branchSizes = new BranchSizes();
+		TaxonomyTreeWalker.walk(taxonomy, branchSizes);
+
+		int[] roots = new int[branchSizes.counts.size()];
+		for (int i = 0, root = 0; i < roots.length; i++, root = taxonomy.getNextSibling(root)) {
+			roots[i] = root;
+		}
+
+		List<ShardTask> tasks = plan(branchSizes, directory, fileName);
+		for (ShardTask task : tasks) {
+			task.taxonomy = taxonomy;
+			task.roots = roots;
+		}
+		return writeShards(tasks, directory, fileName);
+	}
+
+	// Deepest level written by the last transform.
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	// Shard files written by the last transform.
+	public int getShardsWritten() {
+		return shardsWritten;
+	}
+
+	// Shard files are named after the dimension file, HBP_ET_Subject.xml gives HBP_ET_Subject-001.xml and so on.
+	private static String getShardFileName(String fileName, int shard) {
+		int extension = fileName.lastIndexOf('.');
+		String baseName = extension > 0 ? fileName.substring(0, extension) : fileName;
+		return String.format(Locale.ROOT, "%s-%03d%s", baseName, shard + 1, extension > 0 ? fileName.substring(extension) : ".xml");
+	}
+
+	private List<ShardTask> plan(BranchSizes branchSizes, File directory, String fileName) {
+		ArrayList<ShardTask> tasks = new ArrayList<>();
+		int branches = branchSizes.counts.size();
+		long totalCount = branchSizes.totalCount;
+		int firstBranch = 0;
+		int firstId = 1;
+		long count = 0;
+		long bytes = 0;
+		long cumulativeCount = 0;
+
+		for (int branch = 0; branch < branches; branch++) {
+			int branchCount = branchSizes.counts.get(branch);
+			long branchBytes = branchSizes.bytes.get(branch);
+
+			boolean startNewShard;
+			if (shardCount > 0) {
+				// Cut before a branch that would end up mostly past the next equal share.
+				startNewShard = count > 0 && tasks.size() + 1 < shardCount && cumulativeCount + branchCount / 2 >= totalCount * (tasks.size() + 1) / shardCount;
+			} else {
+				startNewShard = count > 0 && bytes + branchBytes > shardSize;
+			}
+
+			if (startNewShard) {
+				tasks.add(new ShardTask(new File(directory, getShardFileName(fileName, tasks.size())), firstBranch, branch, firstId));
+				firstBranch = branch;
+				firstId += (int) count;
+				count = 0;
+				bytes = 0;
+			}
+
+			count += branchCount;
+			bytes += branchBytes;
+			cumulativeCount += branchCount;
+		}
+
+		if (count > 0) {
+			tasks.add(new ShardTask(new File(directory, getShardFileName(fileName, tasks.size())), firstBranch, branches, firstId));
+		}
+		return tasks;
+	}
+
+	private int writeShards(List<ShardTask> tasks, File directory, String fileName) throws IOException {
+		for (ShardTask task : tasks) {
+			ParallelTaxonomyTransformer.PoolHolder.POOL.execute(task);
+		}
+
+		int itemCount = 0;
+		try {
+			for (ShardTask task : tasks) {
+				task.get();
+				itemCount += task.itemCount;
+				maxDepth = Math.max(maxDepth, task.maxDepth);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted whilst writing dimension shards.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw new IOException("Failed to write dimension shard.", cause);
+		} finally {
+			for (ShardTask task : tasks) {
+				task.cancel(false);
+			}
+		}
+
+		writeManifest(tasks, directory, fileName, itemCount);
+		shardsWritten = tasks.size();
+		return itemCount;
+	}
+
+	private void writeManifest(List<ShardTask> tasks, File directory, String fileName, int itemCount) throws IOException {
+		File manifestFile = new File(directory, MANIFEST_FILE_NAME);
+		File temporaryFile = File.createTempFile(MANIFEST_FILE_NAME, ".tmp", directory);
+
+		try {
+			JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8));
+			try {
+				writer.setIndent("  ");
+				writer.beginObject();
+				writer.name("dimensionName").value(dimensionName);
+				writer.name("fileName").value(fileName);
+				writer.name("nodes").value(itemCount);
+				writer.name("shards").beginArray();
+				for (ShardTask task : tasks) {
+					writer.beginObject();
+					writer.name("fileName").value(task.file.getName());
+					writer.name("nodes").value(task.itemCount);
+					writer.name("bytes").value(task.file.length());
+					writer.endObject();
+				}
+				writer.endArray();
+				writer.endObject();
+			} finally {
+				writer.close();
+			}
+			Files.move(temporaryFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temporaryFile.delete();
+		}
+	}
+
+	// Counts the terms of each top-level branch and estimates the bytes they will take in the dimension file.
+	private static class BranchSizes implements TaxonomyItemHandler {
+
+		private final ArrayList<Long> bytes = new ArrayList<>();
+		private final ArrayList<Integer> counts = new ArrayList<>();
+		private int totalCount = 0;
+
+		@Override
+		public void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) {
+			if (depth == 0) {
+				counts.add(0);
+				bytes.add(0L);
+			}
+			totalCount++;
+
+			// Ids are about as long as the term's number, and the unique path repeats one id per level.
+			int idLength = String.valueOf(totalCount).length();
+			long estimate = NODE_MARKUP_BYTES + (long) (depth + 2) * (idLength + 1) + length(taxonomyItem.getName()) + 2L * length(taxonomyItem.getUid());
+
+			int branch = counts.size() - 1;
+			counts.set(branch, counts.get(branch) + 1);
+			bytes.set(branch, bytes.get(branch) + estimate);
+		}
+
+		private static int length(String value) {
+			return value == null ? 0 : value.length();
+		}
+
+	}
+
+	private class ShardTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int endBranch;
+		private final File file;
+		private final int firstBranch;
+		private final int firstId;
+		private int itemCount;
+		private int maxDepth;
+		private int[] roots;
+		private CompactTaxonomy taxonomy;
+		private List<TaxonomyItem> taxonomyItems;
+
+		// Covers the top-level branches from firstBranch up to but not including endBranch.
+		ShardTask(File file, int firstBranch, int endBranch, int firstId) {
+			this.file = file;
+			this.firstBranch = firstBranch;
+			this.endBranch = endBranch;
+			this.firstId = firstId;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				StaxDimensionWriter writer = new StaxDimensionWriter(file, indent, indexed);
+				try {
+					writer.writeRoot(dimensionName);
+					TaxonomyItemWriter taxonomyItemWriter = new TaxonomyItemWriter(writer, dimensionName, idStore != null ? null : new IdUtil(firstId));
+					if (taxonomy == null) {
+						TaxonomyTreeWalker.walk(taxonomyItems, taxonomyItemWriter, null, 0);
+					} else {
+						for (int branch = firstBranch; branch < endBranch; branch++) {
+							TaxonomyTreeWalker.walk(taxonomy, roots[branch], taxonomyItemWriter);
+						}
+					}
+					writer.finish();
+					itemCount = taxonomyItemWriter.getItemCount();
+					maxDepth = taxonomyItemWriter.getMaxDepth();
+				} finally {
+					writer.close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,339 @@
+package com.realdecoy.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.realdecoy.index.DimensionIndex;
+import com.realdecoy.index.DimensionIndexWriter;
+import com.realdecoy.model.TaxonomyItem;
+
+/**
+ * Streams the dimension straight to disk as nodes are visited. The output is
+ * byte for byte what {@link DomDimensionWriter} produces, including the
+ * Transformer's declaration, indentation and character escaping.
+ *
+ * An indexed writer also records the byte range of every node and writes the
+ * {@link DimensionIndex} sidecar next to the file when it is finished.
+ */
+public class StaxDimensionWriter implements DimensionWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// JDK (SJSXP) specific property, lets us escape values the same way the Transformer does.
+	private static final String ESCAPE_CHARACTERS_PROPERTY = "escapeCharacters";
+	private static final String INDENT = "  ";
+	private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+	private final CountingOutputStream countingStream;
+	private final boolean fragment;
+	private final boolean indent;
+	private final DimensionIndexWriter index;
+	private final File indexFile;
+	// Where the last indexed node ended, the next one starts a line break and indent later.
+	private long lastNodeEnd = -1;
+	private final OutputStream outputStream;
+	private final boolean selfEscaping;
+	private final XMLStreamWriter writer;
+
+	public StaxDimensionWriter(File outputFile, boolean indent) throws IOException {
+		this(outputFile, indent, false);
+	}
+
+	public StaxDimensionWriter(File outputFile, boolean indent, boolean indexed) throws IOException {
+		this(new BufferedOutputStream(Channels.newOutputStream(FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)), BUFFER_SIZE), indent, false, indexed ? new DimensionIndexWriter() : null, indexed ? DimensionIndex.getIndexFile(outputFile) : null);
+	}
+
+	private StaxDimensionWriter(OutputStream outputStream, boolean indent, boolean fragment, DimensionIndexWriter index, File indexFile) throws IOException {
+		this.outputStream = outputStream;
+		this.countingStream = new CountingOutputStream(outputStream);
+		this.indent = indent;
+		this.fragment = fragment;
+		this.index = index;
+		this.indexFile = indexFile;
+
+		try {
+			XMLOutputFactory factory = XMLOutputFactory.newInstance();
+			selfEscaping = factory.isPropertySupported(ESCAPE_CHARACTERS_PROPERTY);
+			if (selfEscaping) {
+				factory.setProperty(ESCAPE_CHARACTERS_PROPERTY, Boolean.FALSE);
+			}
+
+			if (!fragment) {
+				// XMLStreamWriter cannot emit standalone="no", so the declaration is written ahead of it.
+				countingStream.write(XML_DECLARATION.getBytes(Charset.forName("UTF-8")));
+				if (indent) {
+					countingStream.write('\n');
+				}
+			}
+
+			writer = factory.createXMLStreamWriter(countingStream, "UTF-8");
+			if (!fragment) {
+				writer.writeStartElement("external_dimensions");
+			}
+		} catch (XMLStreamException e) {
+			outputStream.close();
+			throw new IOException("Failed to create dimension writer.", e);
+		}
+	}
+
+	// Creates a writer for nodes only, formatted and indexed like this one, whose output can be appended with writeFragment.
+	public StaxDimensionWriter createFragmentWriter(OutputStream outputStream) throws IOException {
+		return new StaxDimensionWriter(outputStream, indent, true, index == null ? null : new DimensionIndexWriter(), null);
+	}
+
+	// Node locations recorded so far, relative to the start of the output. Null when the writer is not indexed.
+	public DimensionIndexWriter getIndex() {
+		return index;
+	}
+
+	// Appends the nodes written by a fragment writer as they are, along with the index the fragment writer kept.
+	public void writeFragment(ByteArrayOutputStream nodes, DimensionIndexWriter nodesIndex) throws IOException {
+		long offset;
+		try {
+			offset = flushPendingOutput();
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to append dimension nodes.", e);
+		}
+		nodes.writeTo(countingStream);
+		if (index != null && nodesIndex != null) {
+			index.addFragment(nodesIndex, offset);
+		}
+	}
+
+	@Override
+	public void writeRoot(String dimensionName) throws IOException {
+		if (fragment) {
+			throw new IllegalStateException("Fragment writers write nodes only.");
+		}
+		try {
+			newLine(1);
+			writeStartTag("node", true, "id", dimensionName, "name", dimensionName);
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to write dimension root node.", e);
+		}
+	}
+
+	@Override
+	public void writeNode(TaxonomyItem taxonomyItem, String directParent, UniquePath uniquePath) throws IOException {
+		try {
+			// Attributes are written in the alphabetical order the DOM serializer uses.
+			newLine(1);
+			long offset = index == null ? 0 : getNodeOffset();
+			boolean verbatim = writeStartTag("node", false, "classify", "false", "id", taxonomyItem.getGeneratedUid(), "name", taxonomyItem.getName(), "parent", directParent, "search", "true");
+
+			newLine(2);
+			writeStartTag("synonym", true, "classify", "true", "name", taxonomyItem.getUid(), "search", "false");
+
+			writeUniquePath(uniquePath);
+			writeProperty("SID", taxonomyItem.getUid());
+
+			newLine(1);
+			if (verbatim) {
+				writer.writeCharacters("</node>");
+			} else {
+				writer.writeEndElement();
+			}
+
+			if (index != null) {
+				lastNodeEnd = flushPendingOutput();
+				index.addNode(taxonomyItem.getUid(), taxonomyItem.getGeneratedUid(), offset, (int) (lastNodeEnd - offset));
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to write dimension node: " + taxonomyItem.getUid() + ".", e);
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		try {
+			if (fragment) {
+				writer.flush();
+				return;
+			}
+			newLine(0);
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			if (indent) {
+				writer.writeCharacters("\n");
+			}
+			writer.flush();
+			outputStream.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to complete dimension file.", e);
+		}
+
+		if (index != null) {
+			index.write(indexFile, countingStream.getCount());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to close dimension writer.", e);
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	// Returns true when the tag had to be written verbatim, in which case a matching end tag must be written the same way.
+	private boolean writeStartTag(String localName, boolean empty, String... attributes) throws XMLStreamException {
+		boolean verbatim = false;
+		for (int i = 1; i < attributes.length && selfEscaping; i += 2) {
+			verbatim |= requiresCharacterReference(attributes[i]);
+		}
+
+		if (verbatim) {
+			// The stream writer escapes attribute values itself but leaves whitespace, control and
+			// supplementary characters raw. The Transformer writes character references for those,
+			// so this tag is written through unescaped characters instead.
+			StringBuilder tag = new StringBuilder("<").append(localName);
+			for (int i = 0; i < attributes.length; i += 2) {
+				tag.append(' ').append(attributes[i]).append("=\"").append(escape(attributes[i + 1] == null ? "" : attributes[i + 1], true)).append('"');
+			}
+			writer.writeCharacters(tag.append(empty ? "/>" : ">").toString());
+		} else {
+			if (empty) {
+				writer.writeEmptyElement(localName);
+			} else {
+				writer.writeStartElement(localName);
+			}
+			for (int i = 0; i < attributes.length; i += 2) {
+				writer.writeAttribute(attributes[i], attributes[i + 1] == null ? "" : attributes[i + 1]);
+			}
+		}
+
+		return verbatim;
+	}
+
+	private void writeProperty(String name, String value) throws XMLStreamException {
+		newLine(2);
+		if (value == null || value.isEmpty()) {
+			writer.writeEmptyElement("property");
+			writer.writeAttribute("name", name);
+		} else {
+			writer.writeStartElement("property");
+			writer.writeAttribute("name", name);
+			writer.writeCharacters(selfEscaping ? escape(value, false) : value);
+			writer.writeEndElement();
+		}
+	}
+
+	// Written straight from the path buffer, the path is made of generated ids and never needs escaping in practice.
+	private void writeUniquePath(UniquePath uniquePath) throws XMLStreamException {
+		if (uniquePath.length() == 0 || (selfEscaping && requiresEscaping(uniquePath))) {
+			writeProperty("UNIQUE_PATH", uniquePath.toString());
+		} else {
+			newLine(2);
+			writer.writeStartElement("property");
+			writer.writeAttribute("name", "UNIQUE_PATH");
+			writer.writeCharacters(uniquePath.getChars(), 0, uniquePath.length());
+			writer.writeEndElement();
+		}
+	}
+
+	// Saves flushing the stream writer before every node, only the first one has to wait for the output to be counted.
+	private long getNodeOffset() throws XMLStreamException {
+		if (lastNodeEnd < 0) {
+			return flushPendingOutput();
+		}
+		return lastNodeEnd + (indent ? 1 + INDENT.length() : 0);
+	}
+
+	// Returns the number of bytes written so far, once everything the stream writer holds is out.
+	private long flushPendingOutput() throws XMLStreamException {
+		// The stream writer closes a pending start tag lazily, it must be out before the count is read.
+		writer.writeCharacters("");
+		writer.flush();
+		return countingStream.getCount();
+	}
+
+	private void newLine(int level) throws XMLStreamException {
+		if (indent) {
+			writer.writeCharacters("\n");
+			for (int i = 0; i < level; i++) {
+				writer.writeCharacters(INDENT);
+			}
+		}
+	}
+
+	private static boolean requiresCharacterReference(String value) {
+		if (value != null) {
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c < 0x20 || Character.isSurrogate(c)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean requiresEscaping(CharSequence value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '&' || c == '<' || c == '>' || (c < 0x20 && c != '\t' && c != '\n') || (c >= 0x7F && c <= 0x9F) || Character.isSurrogate(c)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Mirrors the escaping of the JDK's serializer: attributes escape quotes and whitespace control
+	// characters, text escapes carriage returns and C1 controls, both escape supplementary characters.
+	static String escape(String value, boolean isAttribute) {
+		StringBuilder builder = null;
+		int length = value.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			boolean supplementary = false;
+			String replacement = null;
+
+			if (c == '&') {
+				replacement = "&amp;";
+			} else if (c == '<') {
+				replacement = "&lt;";
+			} else if (c == '>') {
+				replacement = "&gt;";
+			} else if (c == '"' && isAttribute) {
+				replacement = "&quot;";
+			} else if (c < 0x20 && (isAttribute || (c != '\t' && c != '\n'))) {
+				replacement = "&#" + (int) c + ";";
+			} else if (c >= 0x7F && c <= 0x9F && !isAttribute) {
+				replacement = "&#" + (int) c + ";";
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				replacement = "&#" + value.codePointAt(i) + ";";
+				supplementary = true;
+			}
+
+			if (replacement != null) {
+				if (builder == null) {
+					builder = new StringBuilder(length + 16);
+					builder.append(value, 0, i);
+				}
+				builder.append(replacement);
+				if (supplementary) {
+					i++;
+				}
+			} else if (builder != null) {
+				builder.append(c);
+			}
+		}
+
+		return builder == null ? value : builder.toString();
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.realdecoy.writer;
+
+import java.io.IOException;
+
+import com.realdecoy.model.TaxonomyItem;
+import com.realdecoy.parser.TaxonomyItemHandler;
+import com.realdecoy.util.IdUtil;
+
+/**
+ * Assigns generated ids and unique paths to taxonomy items as they are visited
+ * and passes them on to a {@link DimensionWriter}.
+ */
+public class TaxonomyItemWriter implements TaxonomyItemHandler {
+
+	private final String dimensionName;
+	private final IdUtil idUtil;
+	private int itemCount = 0;
+	private int maxDepth = 0;
+	private final UniquePath uniquePath = new UniquePath();
+	private final DimensionWriter writer;
+
+	// Without an IdUtil the generated ids already set on the items are kept.
+	public TaxonomyItemWriter(DimensionWriter writer, String dimensionName, IdUtil idUtil) {
+		this.writer = writer;
+		this.dimensionName = dimensionName;
+		this.idUtil = idUtil;
+	}
+
+	@Override
+	public void handle(TaxonomyItem taxonomyItem, int depth, TaxonomyItem parent) throws IOException {
+		if (idUtil != null) {
+			taxonomyItem.setGeneratedUid(idUtil.getId(taxonomyItem.getUid(), parent == null ? null : parent.getUid(),
+					parent == null ? null : parent.getGeneratedUid()));
+		}
+
+		String directParent = parent == null ? dimensionName : parent.getGeneratedUid();
+		writer.writeNode(taxonomyItem, directParent, uniquePath.enter(depth, taxonomyItem.getGeneratedUid()));
+		itemCount++;
+		if (depth > maxDepth) {
+			maxDepth = depth;
+		}
+	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.realdecoy.writer;
+
+import java.util.Arrays;
+
+/**
+ * The comma separated UNIQUE_PATH of the node currently being visited in a
+ * depth first walk. Ancestor ids stay in one shared buffer, so entering a
+ * node only cuts the buffer back to its parent's path and appends the node's
+ * own id. Nothing is copied per ancestor and nothing is allocated once the
+ * buffer has grown to the deepest path.
+ */
+public class UniquePath implements CharSequence {
+
+	private static final char SEPARATOR = ',';
+
+	private char[] chars = new char[256];
+	private int depth = -1;
+	// ends[d] is the length of the path of the open node at depth d.
+	private int[] ends = new int[16];
+	private int length = 0;
+
+	// Makes this the path of a node at the given depth, whose parent is the node last entered at depth - 1.
+	public UniquePath enter(int depth, String id) {
+		if (depth < 0 || depth > this.depth + 1) {
+			throw new IllegalArgumentException("Cannot enter depth " + depth + " from depth " + this.depth + ".");
+		}
+
+		length = depth == 0 ? 0 : ends[depth - 1];
+		ensureCapacity(length + 1 + id.length());
+
+		if (depth > 0) {
+			chars[length++] = SEPARATOR;
+		}
+		id.getChars(0, id.length(), chars, length);
+		length += id.length();
+
+		if (depth == ends.length) {
+			ends = Arrays.copyOf(ends, depth * 2);
+		}
+		ends[depth] = length;
+		this.depth = depth;
+		return this;
+	}
+
+	// The backing buffer, valid up to length(). It is overwritten by the next call to enter.
+	public char[] getChars() {
+		return chars;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length + ".");
+		}
+		return chars[index];
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end + ", length: " + length + ".");
+		}
+		return new String(chars, start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+		}
+	}
+
+}
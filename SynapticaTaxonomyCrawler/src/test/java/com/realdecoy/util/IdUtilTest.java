@@ -0,0 +1,56 @@
+package com.realdecoy.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IdUtilTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// A, B and C each hold P, which holds X, so P and X both repeat.
+	private static final String[][] REPEATED_PARENT_TREE = {
+		{ "A", null, null }, { "P", "A", "0" }, { "X", "P", "1" },
+		{ "B", null, null }, { "P", "B", "3" }, { "X", "P", "4" },
+		{ "C", null, null }, { "P", "C", "6" }, { "X", "P", "7" }
+	};
+
+	@Test
+	public void repeatedParentsGetUniqueIdsThatAreStableAcrossRuns() throws IOException {
+		File logFile = new File(folder.getRoot(), "ids.log");
+		File indexFile = new File(folder.getRoot(), "ids.idx");
+
+		List<String> firstRun = assignIds(logFile, indexFile);
+		assertEquals(REPEATED_PARENT_TREE.length, new HashSet<>(firstRun).size());
+		assertEquals(firstRun, assignIds(logFile, indexFile));
+
+		indexFile.delete();
+		assertEquals(firstRun, assignIds(logFile, indexFile));
+	}
+
+	// Visits the tree in document order, each parent given as its Uid and the position of its occurrence.
+	private static List<String> assignIds(File logFile, File indexFile) throws IOException {
+		List<String> ids = new ArrayList<>();
+		StableIdStore store = StableIdStore.open(logFile, indexFile);
+		try {
+			IdUtil idUtil = new IdUtil(store);
+			for (String[] term : REPEATED_PARENT_TREE) {
+				String parentId = term[2] == null ? null : ids.get(Integer.parseInt(term[2]));
+				ids.add(idUtil.getId(term[0], term[1], parentId));
+			}
+		} finally {
+			store.close();
+		}
+		return ids;
+	}
+
+}